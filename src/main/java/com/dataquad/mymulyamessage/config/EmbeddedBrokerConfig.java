@@ -0,0 +1,42 @@
+package com.dataquad.mymulyamessage.config;
+
+import org.apache.activemq.artemis.api.core.RoutingType;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.core.settings.impl.AddressSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * In-process ActiveMQ Artemis broker with a STOMP acceptor, as a local stand-in for the
+ * external broker in {@code chat.broker.mode=relay}. Start two instances of the app on
+ * different ports, enable this on one of them, and point both relays at it.
+ *
+ * <p>The Artemis dependencies are optional and left out of the packaged jar, so this is only
+ * available when running from the build (e.g. {@code mvn spring-boot:run}).
+ */
+@Configuration
+@ConditionalOnClass(EmbeddedActiveMQ.class)
+@ConditionalOnProperty(name = "chat.broker.embedded.enabled", havingValue = "true")
+public class EmbeddedBrokerConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public EmbeddedActiveMQ embeddedStompBroker(@Value("${chat.broker.relay.host:localhost}") String host,
+                                                @Value("${chat.broker.relay.port:61613}") int port) throws Exception {
+        ConfigurationImpl configuration = new ConfigurationImpl();
+        configuration.setPersistenceEnabled(false);
+        configuration.setSecurityEnabled(false);
+        configuration.addAcceptorConfiguration("stomp", "tcp://" + host + ":" + port + "?protocols=STOMP");
+        // Chat destinations are publish/subscribe, including /user/{userId}/queue/... (one user, many tabs)
+        configuration.addAddressSetting("#", new AddressSettings()
+                .setDefaultAddressRoutingType(RoutingType.MULTICAST)
+                .setDefaultQueueRoutingType(RoutingType.MULTICAST));
+
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(configuration);
+        return broker;
+    }
+}
@@ -1,5 +1,8 @@
 package com.dataquad.mymulyamessage.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.jdbc.DataSourceBuilder;
@@ -24,8 +27,12 @@ public class MySQLConfig {
 
     @Bean(name = "mysqlDataSource")
     @ConfigurationProperties(prefix = "spring.datasource.mysql")
-    public DataSource mysqlDataSource() {
-        return DataSourceBuilder.create().build();
+    public HikariDataSource mysqlDataSource(MeterRegistry meterRegistry) {
+        // Pool settings are bound from spring.datasource.mysql.* (see application.properties)
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class).build();
+        // Set before the pool starts; exports hikaricp.connections.* tagged with the pool name
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
     }
 
     @Bean(name = "mysqlEntityManagerFactory")
@@ -37,10 +44,11 @@ public class MySQLConfig {
         em.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
         
         HashMap<String, Object> properties = new HashMap<>();
-        properties.put("hibernate.hbm2ddl.auto", "update");
+        // Read-only connections: the users schema is owned by the production database
+        properties.put("hibernate.hbm2ddl.auto", "none");
         properties.put("hibernate.dialect", "org.hibernate.dialect.MySQL8Dialect");
-        properties.put("hibernate.format_sql", "true");
-        properties.put("hibernate.show_sql", "true");
+        properties.put("hibernate.show_sql", "false");
+        properties.put("hibernate.generate_statistics", "true");
         em.setJpaPropertyMap(properties);
         
         return em;
@@ -1,18 +1,25 @@
 package com.dataquad.mymulyamessage.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
+import java.time.Duration;
 import java.util.HashMap;
 
 @Configuration
@@ -26,8 +33,38 @@ public class PostgreSQLConfig {
     @Primary
     @Bean(name = "postgresqlDataSource")
     @ConfigurationProperties(prefix = "spring.datasource.postgresql")
-    public DataSource postgresqlDataSource() {
-        return DataSourceBuilder.create().build();
+    public HikariDataSource postgresqlDataSource(MeterRegistry meterRegistry) {
+        // Pool settings are bound from spring.datasource.postgresql.* (see application.properties)
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class).build();
+        // Set before the pool starts; exports hikaricp.connections.* tagged with the pool name
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
+    }
+
+    /**
+     * Small pool for bulk exports, which hold a connection for as long as the client takes to
+     * download. Same database settings as the main pool, but no leak detection (exports longer
+     * than its threshold would be reported as leaks) and exports can't exhaust the main pool.
+     */
+    @Bean(name = "postgresqlExportDataSource", destroyMethod = "close")
+    public HikariDataSource postgresqlExportDataSource(@Qualifier("postgresqlDataSource") HikariDataSource postgresqlDataSource,
+                                                       MeterRegistry meterRegistry,
+                                                       @Value("${chat.export.pool.maximum-size:4}") int maximumPoolSize,
+                                                       @Value("${chat.export.pool.leak-detection-threshold:0}") Duration leakDetectionThreshold) {
+        HikariConfig config = new HikariConfig();
+        postgresqlDataSource.copyStateTo(config);
+        config.setPoolName(postgresqlDataSource.getPoolName() + "-export");
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(0);
+        config.setLeakDetectionThreshold(leakDetectionThreshold.toMillis());
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return new HikariDataSource(config);
+    }
+
+    @Bean(name = "postgresqlExportTransactionManager")
+    public PlatformTransactionManager postgresqlExportTransactionManager(
+            @Qualifier("postgresqlExportDataSource") DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
     }
 
     @Primary
@@ -40,8 +77,10 @@ public class PostgreSQLConfig {
         em.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
         
         HashMap<String, Object> properties = new HashMap<>();
-        properties.put("hibernate.hbm2ddl.auto", "update");
+        // Schema is managed by Flyway (db/migration); messages is partitioned, which hbm2ddl can't express
+        properties.put("hibernate.hbm2ddl.auto", "none");
         properties.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        properties.put("hibernate.generate_statistics", "true");
         em.setJpaPropertyMap(properties);
         
         return em;
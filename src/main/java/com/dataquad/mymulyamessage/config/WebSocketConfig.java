@@ -1,24 +1,167 @@
 package com.dataquad.mymulyamessage.config;
 
+import com.dataquad.mymulyamessage.websocket.BinaryTransportHandshakeInterceptor;
+import com.dataquad.mymulyamessage.websocket.InboundRateLimitInterceptor;
+import com.dataquad.mymulyamessage.websocket.OutboundFlowControlInterceptor;
+import com.dataquad.mymulyamessage.websocket.PayloadFormatInterceptor;
+import com.dataquad.mymulyamessage.websocket.PresenceChannelInterceptor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.time.Duration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    // "simple" keeps the in-process broker (single node); "relay" forwards to an external STOMP broker
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${chat.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${chat.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    @Value("${chat.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${chat.websocket.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${chat.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${chat.websocket.outbound.core-pool-size:16}")
+    private int outboundCorePoolSize;
+
+    @Value("${chat.websocket.outbound.max-pool-size:64}")
+    private int outboundMaxPoolSize;
+
+    @Value("${chat.websocket.outbound.queue-capacity:50000}")
+    private int outboundQueueCapacity;
+
+    @Value("${chat.websocket.broker.pool-size:1}")
+    private int brokerPoolSize;
+
+    @Value("${chat.websocket.send-time-limit:10s}")
+    private Duration sendTimeLimit;
+
+    @Value("${chat.websocket.send-buffer-size-limit:512KB}")
+    private DataSize sendBufferSizeLimit;
+
+    @Value("${chat.websocket.message-size-limit:64KB}")
+    private DataSize messageSizeLimit;
+
+    @Value("${chat.websocket.heartbeat.server:10s}")
+    private Duration serverHeartbeat;
+
+    @Value("${chat.websocket.heartbeat.client:10s}")
+    private Duration clientHeartbeat;
+
+    private final OutboundFlowControlInterceptor outboundFlowControlInterceptor;
+    private final PresenceChannelInterceptor presenceChannelInterceptor;
+    private final PayloadFormatInterceptor payloadFormatInterceptor;
+    private final InboundRateLimitInterceptor inboundRateLimitInterceptor;
+    private final TaskScheduler messageBrokerTaskScheduler;
+
+    public WebSocketConfig(OutboundFlowControlInterceptor outboundFlowControlInterceptor,
+                           PresenceChannelInterceptor presenceChannelInterceptor,
+                           PayloadFormatInterceptor payloadFormatInterceptor,
+                           InboundRateLimitInterceptor inboundRateLimitInterceptor,
+                           @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler messageBrokerTaskScheduler) {
+        this.outboundFlowControlInterceptor = outboundFlowControlInterceptor;
+        this.presenceChannelInterceptor = presenceChannelInterceptor;
+        this.payloadFormatInterceptor = payloadFormatInterceptor;
+        this.inboundRateLimitInterceptor = inboundRateLimitInterceptor;
+        this.messageBrokerTaskScheduler = messageBrokerTaskScheduler;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/user");
+        // Dedicated pool for broker fan-out, so a slow subscriber never runs on the inbound threads.
+        // A single thread keeps messages in publish order; per-session order on the outbound pool is
+        // kept by OutboundFlowControlInterceptor (not preservePublishOrder, which hides the backlog)
+        config.configureBrokerChannel().taskExecutor()
+                .corePoolSize(brokerPoolSize)
+                .maxPoolSize(brokerPoolSize);
+        if ("relay".equals(brokerMode)) {
+            // Clients subscribe to /user/{userId}/... literally, so those destinations are relayed
+            // as-is and every node sees them through the external broker. Sessions have no
+            // Principal, so there is no user registry to share and no user destination broadcast
+            var relay = config.enableStompBrokerRelay("/topic", "/user")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode);
+            if (!relayVirtualHost.isEmpty()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+        } else {
+            // Heartbeats let the broker close half-open connections, which ends their presence
+            config.enableSimpleBroker("/topic", "/user")
+                    .setHeartbeatValue(new long[] {serverHeartbeat.toMillis(), clientHeartbeat.toMillis()})
+                    .setTaskScheduler(messageBrokerTaskScheduler);
+        }
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+        // Rate limits run after presence, so throttled clients still count as active
+        registration.interceptors(presenceChannelInterceptor, inboundRateLimitInterceptor, payloadFormatInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+        registration.interceptors(outboundFlowControlInterceptor, payloadFormatInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // A session exceeding either limit while sending is closed (slow consumer disconnect)
+        registration.setSendTimeLimit((int) sendTimeLimit.toMillis())
+                .setSendBufferSizeLimit((int) sendBufferSizeLimit.toBytes())
+                .setMessageSizeLimit((int) messageSizeLimit.toBytes());
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
+        // Raw WebSocket for clients that don't need the SockJS fallbacks. Binary frames (CBOR)
+        // are only possible here; Tomcat negotiates permessage-deflate when the client offers it
+        registry.addEndpoint("/ws-native").setAllowedOriginPatterns("*")
+                .addInterceptors(new BinaryTransportHandshakeInterceptor());
     }
-}
\ No newline at end of file
+}
@@ -1,23 +1,57 @@
 package com.dataquad.mymulyamessage.controller;
 
+import com.dataquad.mymulyamessage.dto.MessageCursor;
 import com.dataquad.mymulyamessage.dto.MessageDto;
+import com.dataquad.mymulyamessage.dto.MessageSearchPage;
+import com.dataquad.mymulyamessage.dto.SearchCursor;
+import com.dataquad.mymulyamessage.dto.SyncRequest;
+import com.dataquad.mymulyamessage.dto.SyncResponse;
+import com.dataquad.mymulyamessage.dto.UploadInitRequest;
+import com.dataquad.mymulyamessage.dto.UploadStatus;
 import com.dataquad.mymulyamessage.entity.mysql.User;
-import com.dataquad.mymulyamessage.entity.postgresql.Message;
-import com.dataquad.mymulyamessage.entity.postgresql.UserSession;
 import com.dataquad.mymulyamessage.repository.mysql.UserRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageExportRepository.ExportFilter;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageExportRepository.Scope;
 import com.dataquad.mymulyamessage.repository.postgresql.MessageRepository;
-import com.dataquad.mymulyamessage.repository.postgresql.UserSessionRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageSearchResult;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageSummary;
+import com.dataquad.mymulyamessage.service.AttachmentService;
+import com.dataquad.mymulyamessage.service.ChatMetrics;
+import com.dataquad.mymulyamessage.service.ChunkedUploadService;
+import com.dataquad.mymulyamessage.service.ConversationKeys;
+import com.dataquad.mymulyamessage.service.MessageDtoMapper;
+import com.dataquad.mymulyamessage.service.MessageExportService;
+import com.dataquad.mymulyamessage.service.MessageHistoryCache;
+import com.dataquad.mymulyamessage.service.MessageIdGenerator;
+import com.dataquad.mymulyamessage.service.PresenceService;
+import com.dataquad.mymulyamessage.service.SyncService;
+import com.dataquad.mymulyamessage.service.UserDirectoryService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api")
@@ -25,9 +59,24 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "*")
 public class ApiController {
     
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // Messages get their sentAt just before their ID on the same node
+    private static final Duration ID_SENT_AT_MARGIN = Duration.ofMinutes(1);
+    
     private final UserRepository userRepository;
     private final MessageRepository messageRepository;
-    private final UserSessionRepository userSessionRepository;
+    private final UserDirectoryService userDirectoryService;
+    private final AttachmentService attachmentService;
+    private final PresenceService presenceService;
+    private final MessageHistoryCache messageHistoryCache;
+    private final MessageDtoMapper messageDtoMapper;
+    private final SyncService syncService;
+    private final ChatMetrics chatMetrics;
+    private final ChunkedUploadService chunkedUploadService;
+    private final MessageExportService messageExportService;
 
     @GetMapping("/users/all")
     public List<User> getAllUsers() {
@@ -59,17 +108,14 @@ public class ApiController {
         String userId = request.get("userId");
         
         try {
-            Optional<User> user = userRepository.findById(userId);
+            Optional<User> user = userDirectoryService.findById(userId);
             if (user.isEmpty()) {
                 return ResponseEntity.badRequest().body("User not found");
             }
             
-            UserSession session = userSessionRepository.findByUserId(userId)
-                    .orElse(new UserSession());
-            session.setUserId(userId);
-            session.setIsOnline(true);
-            session.setLastActivity(LocalDateTime.now());
-            userSessionRepository.save(session);
+            // Online state follows the WebSocket session once the client sends userId on CONNECT;
+            // until then the login keeps the user online for chat.presence.login-online-ttl
+            presenceService.loggedIn(userId);
             
             return ResponseEntity.ok("Login successful");
         } catch (Exception e) {
@@ -79,99 +125,232 @@ public class ApiController {
     
     @GetMapping("/users/online")
     public List<String> getOnlineUsers() {
-        try {
-            return userSessionRepository.findByIsOnline(true)
-                    .stream()
-                    .map(UserSession::getUserId)
-                    .collect(Collectors.toList());
-        } catch (Exception e) {
-            return List.of(); // Return empty list if database unavailable
-        }
+        return presenceService.getOnlineUsers();
     }
 
     @GetMapping("/messages")
-    public List<MessageDto> getMessages(@RequestParam(defaultValue = "50") int limit) {
-        List<Message> messages = messageRepository.findByRecipientIdIsNullOrderBySentAtDesc(PageRequest.of(0, limit));
-        return messages.stream().map(this::convertToDto).collect(Collectors.toList());
+    public List<MessageDto> getMessages(@RequestParam(defaultValue = "50") int limit,
+                                        @RequestParam(required = false) String before,
+                                        @RequestParam(required = false) String after) {
+        PageRequest page = PageRequest.of(0, limit);
+        List<MessageSummary> messages;
+        if (before != null) {
+            MessageCursor cursor = parseCursor(before);
+            messages = messageRepository.findGeneralMessagesBefore(cursor.getSentAt(), cursor.getId(), page);
+        } else if (after != null) {
+            MessageCursor cursor = parseCursor(after);
+            messages = newestFirst(messageRepository.findGeneralMessagesAfter(cursor.getSentAt(), cursor.getId(), page));
+        } else {
+            return messageHistoryCache.latest(null, limit, n -> convertToDtos(
+                    messageRepository.findByRecipientIdIsNullOrderBySentAtDescIdDesc(PageRequest.of(0, n))));
+        }
+        return convertToDtos(messages);
     }
 
     @GetMapping("/messages/direct")
     public List<MessageDto> getDirectMessages(@RequestParam String user1, 
                                             @RequestParam String user2, 
-                                            @RequestParam(defaultValue = "50") int limit) {
-        List<Message> messages = messageRepository.findDirectMessages(user1, user2, PageRequest.of(0, limit));
-        return messages.stream().map(this::convertToDto).collect(Collectors.toList());
-    }
-    
-    private MessageDto convertToDto(Message message) {
-        MessageDto dto = new MessageDto();
-        dto.setId(message.getId());
-        dto.setSenderId(message.getSenderId());
-        dto.setRecipientId(message.getRecipientId());
-        dto.setContent(message.getContent());
-        dto.setFileName(message.getFileName());
-        dto.setFileType(message.getFileType());
-        dto.setFileSize(message.getFileSize());
-        dto.setMessageType(message.getMessageType());
-        dto.setSentAt(message.getSentAt());
+                                            @RequestParam(defaultValue = "50") int limit,
+                                            @RequestParam(required = false) String before,
+                                            @RequestParam(required = false) String after) {
+        String conversationId = ConversationKeys.direct(user1, user2);
+        PageRequest page = PageRequest.of(0, limit);
+        List<MessageSummary> messages;
+        if (before != null) {
+            MessageCursor cursor = parseCursor(before);
+            messages = messageRepository.findDirectMessagesBefore(conversationId, cursor.getSentAt(), cursor.getId(), page);
+        } else if (after != null) {
+            MessageCursor cursor = parseCursor(after);
+            messages = newestFirst(messageRepository.findDirectMessagesAfter(conversationId, cursor.getSentAt(), cursor.getId(), page));
+        } else {
+            return messageHistoryCache.latest(conversationId, limit, n -> convertToDtos(
+                    messageRepository.findDirectMessages(conversationId, PageRequest.of(0, n))));
+        }
+        return convertToDtos(messages);
+    }
+    
+    @PostMapping("/sync")
+    public SyncResponse sync(@RequestBody SyncRequest request) {
+        if (request.getUserId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userId is required");
+        }
+        if (request.getDirectCursor() != null) {
+            parseCursor(request.getDirectCursor());
+        }
+        return syncService.sync(request);
+    }
+    
+    @GetMapping("/messages/search")
+    public MessageSearchPage searchMessages(@RequestParam String q,
+                                            @RequestParam(required = false) String user1,
+                                            @RequestParam(required = false) String user2,
+                                            @RequestParam(defaultValue = "20") int limit,
+                                            @RequestParam(required = false) String after) {
+        if (q.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search query must not be empty");
+        }
+        if ((user1 == null) != (user2 == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Both user1 and user2 are required for direct messages");
+        }
+        PageRequest page = PageRequest.of(0, limit);
+        SearchCursor cursor = after != null ? parseSearchCursor(after) : null;
+        List<MessageSearchResult> results;
+        if (user1 != null) {
+            String conversationId = ConversationKeys.direct(user1, user2);
+            results = cursor == null
+                    ? messageRepository.searchDirectMessages(q, conversationId, page)
+                    : messageRepository.searchDirectMessagesAfter(q, conversationId, cursor.getRank(), cursor.getId(), page);
+        } else {
+            results = cursor == null
+                    ? messageRepository.searchGeneralMessages(q, page)
+                    : messageRepository.searchGeneralMessagesAfter(q, cursor.getRank(), cursor.getId(), page);
+        }
         
-        Optional<User> user = userRepository.findById(message.getSenderId());
-        dto.setSenderName(user.map(User::getUserName).orElse("Unknown"));
+        String nextCursor = null;
+        if (results.size() == limit) {
+            MessageSearchResult last = results.get(results.size() - 1);
+            nextCursor = new SearchCursor(last.getRank(), last.getId()).toString();
+        }
+        return new MessageSearchPage(convertToDtos(results), nextCursor);
+    }
+    
+    /**
+     * Streams a whole conversation (user1 and user2), general chat or all messages
+     * (scope=all) as NDJSON or CSV, optionally limited to [from, to) and gzipped.
+     */
+    @GetMapping("/messages/export")
+    public ResponseEntity<StreamingResponseBody> exportMessages(
+            @RequestParam(required = false) String user1,
+            @RequestParam(required = false) String user2,
+            @RequestParam(defaultValue = "general") String scope,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        if ((user1 == null) != (user2 == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Both user1 and user2 are required for direct messages");
+        }
+        ExportFilter filter = user1 != null
+                ? new ExportFilter(Scope.CONVERSATION, ConversationKeys.direct(user1, user2), from, to)
+                : new ExportFilter(parseEnum(Scope.class, scope), null, from, to);
+        MessageExportService.Format exportFormat = parseEnum(MessageExportService.Format.class, format);
         
-        return dto;
+        String fileName = "messages." + exportFormat.name().toLowerCase(Locale.ROOT) + (gzip ? ".gz" : "");
+        MediaType contentType = gzip ? MediaType.parseMediaType("application/gzip")
+                : exportFormat == MessageExportService.Format.CSV ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson");
+        // Written after the handler returns, on an MVC async thread (spring.mvc.async.request-timeout)
+        StreamingResponseBody body = out -> messageExportService.export(filter, exportFormat, gzip, out);
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+    
+    private <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported value " + value);
+        }
+    }
+    
+    private SearchCursor parseSearchCursor(String cursor) {
+        try {
+            return SearchCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+    
+    private MessageCursor parseCursor(String cursor) {
+        try {
+            return MessageCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+    
+    private List<MessageSummary> newestFirst(List<MessageSummary> ascending) {
+        List<MessageSummary> messages = new ArrayList<>(ascending);
+        Collections.reverse(messages);
+        return messages;
+    }
+    
+    private List<MessageDto> convertToDtos(List<? extends MessageSummary> messages) {
+        return messageDtoMapper.toDtos(messages);
     }
 
     @PostMapping("/files/upload")
-    public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file,
-                                           @RequestParam("senderId") String senderId,
-                                           @RequestParam(value = "recipientId", required = false) String recipientId) {
+    public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file) {
         try {
-            // Check if file already exists for this sender
-            Optional<Message> existingMessage = messageRepository.findBySenderIdAndFileNameAndMessageType(
-                senderId, file.getOriginalFilename(), "FILE");
-            
-            Message message;
-            if (existingMessage.isPresent()) {
-                // Update existing file
-                message = existingMessage.get();
-                message.setFileType(file.getContentType());
-                message.setFileSize(file.getSize());
-                message.setFileData(file.getBytes());
-                message.setSentAt(LocalDateTime.now()); // Update timestamp
-            } else {
-                // Create new file message
-                message = new Message();
-                message.setSenderId(senderId);
-                message.setRecipientId(recipientId);
-                message.setFileName(file.getOriginalFilename());
-                message.setFileType(file.getContentType());
-                message.setFileSize(file.getSize());
-                message.setFileData(file.getBytes());
-                message.setMessageType("FILE");
-                message.setContent("📎 " + file.getOriginalFilename());
-                message.setSentAt(LocalDateTime.now());
-            }
-            
-            Message savedMessage = messageRepository.save(message);
-            return ResponseEntity.ok(savedMessage.getId().toString());
+            // Returns the attachment ID to reference as ChatMessage.attachmentId
+            long start = System.nanoTime();
+            long attachmentId = attachmentService.upload(file);
+            chatMetrics.recordUpload(file.getSize(), System.nanoTime() - start);
+            return ResponseEntity.ok(Long.toString(attachmentId));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("File upload failed");
         }
     }
 
+    @PostMapping("/uploads")
+    public UploadStatus initUpload(@RequestBody UploadInitRequest request) throws IOException {
+        if (request.getSize() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size is required");
+        }
+        return chunkedUploadService.init(request.getSize(), request.getChunkSize());
+    }
+    
+    @GetMapping("/uploads/{uploadId}")
+    public UploadStatus getUploadStatus(@PathVariable String uploadId) throws IOException {
+        return chunkedUploadService.status(uploadId);
+    }
+    
+    @PutMapping(value = "/uploads/{uploadId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Void> putChunk(@PathVariable String uploadId,
+                                         @PathVariable int index,
+                                         HttpServletRequest request) throws IOException {
+        // Raw request body, streamed to disk without multipart parsing or buffering
+        long start = System.nanoTime();
+        long written = chunkedUploadService.putChunk(uploadId, index, request.getInputStream());
+        chatMetrics.recordUploadChunk(written, System.nanoTime() - start);
+        return ResponseEntity.noContent().build();
+    }
+    
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<String> completeUpload(@PathVariable String uploadId) throws IOException {
+        // Same attachment ID as POST /files/upload returns
+        return ResponseEntity.ok(Long.toString(chunkedUploadService.complete(uploadId)));
+    }
+
     @GetMapping("/files/{id}")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable Long id) {
+    public ResponseEntity<Resource> downloadFile(@PathVariable Long id, HttpServletRequest request) {
         try {
-            Optional<Message> message = messageRepository.findById(id);
+            long start = System.nanoTime();
+            Optional<MessageSummary> message = findMessage(id);
             
-            if (message.isPresent()) {
-                Message fileMessage = message.get();
+            if (message.isPresent() && "FILE".equals(message.get().getMessageType())) {
+                MessageSummary fileMessage = message.get();
+                Optional<Resource> fileData = attachmentService.load(fileMessage);
                 
-                if ("FILE".equals(fileMessage.getMessageType()) && fileMessage.getFileData() != null) {
-                    return ResponseEntity.ok()
+                if (fileData.isPresent()) {
+                    Resource resource = fileData.get();
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .eTag(attachmentService.etag(fileMessage))
                             .header("Content-Disposition", "attachment; filename=\"" + fileMessage.getFileName() + "\"")
-                            .header("Content-Type", fileMessage.getFileType() != null ? fileMessage.getFileType() : "application/octet-stream")
-                            .body(fileMessage.getFileData());
+                            .header("Content-Type", fileMessage.getFileType() != null ? fileMessage.getFileType() : "application/octet-stream");
+                    
+                    chatMetrics.recordDownloadLookup(System.nanoTime() - start);
+                    if (isPlainDownload(request)) {
+                        chatMetrics.recordFullDownload(resource.contentLength());
+                        if (trySendfile(request, resource)) {
+                            // Tomcat writes the file with sendfile (FileChannel.transferTo) after the handler returns
+                            return response.contentLength(resource.contentLength()).build();
+                        }
+                    }
+                    // Range requests and If-None-Match (304) are handled by Spring MVC for Resource bodies
+                    return response.body(resource);
                 }
             }
             return ResponseEntity.notFound().build();
@@ -179,4 +358,29 @@ public class ApiController {
             return ResponseEntity.status(500).build();
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Looks a message up within the partition its snowflake ID points to; IDs assigned before
+     * MessageIdGenerator (SERIAL) fall back to a lookup across all partitions.
+     */
+    private Optional<MessageSummary> findMessage(long id) {
+        LocalDateTime idTime = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(MessageIdGenerator.timestampOf(id)), ZoneId.systemDefault());
+        return messageRepository.findSummaryByIdSentBetween(id, idTime.minus(ID_SENT_AT_MARGIN), idTime.plus(ID_SENT_AT_MARGIN))
+                .or(() -> messageRepository.findSummaryById(id));
+    }
+    
+    private boolean isPlainDownload(HttpServletRequest request) {
+        return request.getHeader(HttpHeaders.RANGE) == null && request.getHeader(HttpHeaders.IF_NONE_MATCH) == null;
+    }
+    
+    private boolean trySendfile(HttpServletRequest request, Resource resource) throws IOException {
+        if (!resource.isFile() || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME, resource.getFile().getAbsolutePath());
+        request.setAttribute(SENDFILE_START, 0L);
+        request.setAttribute(SENDFILE_END, resource.contentLength());
+        return true;
+    }
+}
@@ -2,12 +2,22 @@ package com.dataquad.mymulyamessage.controller;
 
 import com.dataquad.mymulyamessage.dto.ChatMessage;
 import com.dataquad.mymulyamessage.dto.MessageDto;
-import com.dataquad.mymulyamessage.entity.mysql.User;
+import com.dataquad.mymulyamessage.dto.MessageRejectedNotice;
+import com.dataquad.mymulyamessage.dto.SyncRequest;
 import com.dataquad.mymulyamessage.entity.postgresql.Message;
-import com.dataquad.mymulyamessage.repository.mysql.UserRepository;
-import com.dataquad.mymulyamessage.repository.postgresql.MessageRepository;
-import com.dataquad.mymulyamessage.repository.postgresql.TypingIndicatorRepository;
+import com.dataquad.mymulyamessage.service.AttachmentService;
+import com.dataquad.mymulyamessage.service.ChatMetrics;
+import com.dataquad.mymulyamessage.service.ConversationKeys;
+import com.dataquad.mymulyamessage.service.MessageBroadcaster;
+import com.dataquad.mymulyamessage.service.MessageDtoMapper;
+import com.dataquad.mymulyamessage.service.MessageHistoryCache;
+import com.dataquad.mymulyamessage.service.MessageIdGenerator;
+import com.dataquad.mymulyamessage.service.MessagePersistenceService;
+import com.dataquad.mymulyamessage.service.SyncService;
+import com.dataquad.mymulyamessage.service.TypingService;
+import com.dataquad.mymulyamessage.storage.StoredAttachment;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
@@ -15,143 +25,102 @@ import org.springframework.stereotype.Controller;
 import java.time.LocalDateTime;
 import java.util.Optional;
 
+@Slf4j
 @Controller
 @RequiredArgsConstructor
 public class ChatController {
     
     private final SimpMessagingTemplate messagingTemplate;
-    private final MessageRepository messageRepository;
-    private final UserRepository userRepository;
-    private final TypingIndicatorRepository typingIndicatorRepository;
+    private final AttachmentService attachmentService;
+    private final MessageDtoMapper messageDtoMapper;
+    private final MessageBroadcaster messageBroadcaster;
+    private final MessageIdGenerator messageIdGenerator;
+    private final MessagePersistenceService messagePersistenceService;
+    private final TypingService typingService;
+    private final ChatMetrics chatMetrics;
+    private final MessageHistoryCache messageHistoryCache;
+    private final SyncService syncService;
 
     @MessageMapping("/chat.sendMessage")
     public void sendMessage(ChatMessage chatMessage) {
-        // Stop typing indicator when message is sent
+        long start = System.nanoTime();
         try {
-            Optional<User> user = userRepository.findById(chatMessage.getSenderId());
-            String userName = user.map(User::getUserName).orElse("Unknown");
-            String typingData = "{\"userId\":\"" + chatMessage.getSenderId() + "\",\"userName\":\"" + userName + "\",\"isTyping\":false}";
-            
-            if (chatMessage.getRecipientId() != null) {
-                messagingTemplate.convertAndSendToUser(chatMessage.getRecipientId(), "/queue/typing", typingData);
-            } else {
-                messagingTemplate.convertAndSend("/topic/typing", typingData);
-            }
-        } catch (Exception e) {
-            // Ignore typing stop error
+            handleMessage(chatMessage);
+        } finally {
+            chatMetrics.recordHandling(chatMessage.getMessageType(), System.nanoTime() - start);
         }
+    }
+    
+    private void handleMessage(ChatMessage chatMessage) {
+        // Stop typing indicator when message is sent
+        typingService.stopTyping(chatMessage.getSenderId(), chatMessage.getRecipientId());
         
-        Message savedMessage;
+        Message message;
         
         if ("FILE".equals(chatMessage.getMessageType())) {
-            // For file messages, find the existing message created by upload API
-            Optional<Message> existingFile = messageRepository.findBySenderIdAndFileNameAndMessageType(
-                chatMessage.getSenderId(), chatMessage.getFileName(), "FILE");
-            
-            if (existingFile.isPresent()) {
-                savedMessage = existingFile.get();
-            } else {
-                // Fallback: create new message if not found
-                Message message = new Message();
-                message.setSenderId(chatMessage.getSenderId());
-                message.setContent(chatMessage.getContent());
-                message.setMessageType(chatMessage.getMessageType());
-                message.setRecipientId(chatMessage.getRecipientId());
-                message.setFileName(chatMessage.getFileName());
-                message.setFileType(chatMessage.getFileType());
-                message.setFileSize(chatMessage.getFileSize());
-                message.setSentAt(LocalDateTime.now());
-                savedMessage = messageRepository.save(message);
+            // For file messages, reference the content uploaded through the upload API
+            Optional<StoredAttachment> attachment = chatMessage.getAttachmentId() == null ? Optional.empty()
+                    // Primary key read; size comes from the stored content, not the client
+                    : chatMetrics.stage("file-lookup").record(() -> attachmentService.find(chatMessage.getAttachmentId()));
+            if (attachment.isEmpty()) {
+                // Don't persist a message whose file can't be downloaded
+                log.warn("Rejected file message from {}: unknown attachment {}",
+                        chatMessage.getSenderId(), chatMessage.getAttachmentId());
+                messagingTemplate.convertAndSend("/user/" + chatMessage.getSenderId() + "/queue/errors",
+                        new MessageRejectedNotice("unknown-attachment", chatMessage.getAttachmentId(), null));
+                return;
             }
+            message = new Message();
+            message.setSenderId(chatMessage.getSenderId());
+            message.setContent(chatMessage.getContent() != null ? chatMessage.getContent() : "📎 " + chatMessage.getFileName());
+            message.setMessageType(chatMessage.getMessageType());
+            message.setRecipientId(chatMessage.getRecipientId());
+            message.setFileName(chatMessage.getFileName());
+            message.setFileType(chatMessage.getFileType());
+            message.setSentAt(LocalDateTime.now());
+            message.setFileHash(attachment.get().getHash());
+            message.setFileSize(attachment.get().getSize());
         } else {
             // For text messages, save normally
-            Message message = new Message();
+            message = new Message();
             message.setSenderId(chatMessage.getSenderId());
             message.setContent(chatMessage.getContent());
             message.setMessageType(chatMessage.getMessageType());
             message.setRecipientId(chatMessage.getRecipientId());
             message.setSentAt(LocalDateTime.now());
-            savedMessage = messageRepository.save(message);
         }
         
-        MessageDto messageDto = new MessageDto();
-        messageDto.setId(savedMessage.getId());
-        messageDto.setSenderId(savedMessage.getSenderId());
-        messageDto.setRecipientId(savedMessage.getRecipientId());
-        messageDto.setContent(savedMessage.getContent());
-        messageDto.setMessageType(savedMessage.getMessageType());
-        messageDto.setFileName(savedMessage.getFileName());
-        messageDto.setFileType(savedMessage.getFileType());
-        messageDto.setFileSize(savedMessage.getFileSize());
-        messageDto.setSentAt(savedMessage.getSentAt());
-        
-        Optional<User> user = userRepository.findById(savedMessage.getSenderId());
-        messageDto.setSenderName(user.map(User::getUserName).orElse("Unknown"));
+        message.setId(messageIdGenerator.nextId());
+        message.setConversationId(ConversationKeys.of(message.getSenderId(), message.getRecipientId()));
+        // Persistence latency is recorded by MessagePersistenceService (chat.persistence.latency)
+        messagePersistenceService.persist(message, () -> broadcast(message));
+    }
+    
+    private void broadcast(Message savedMessage) {
+        // Includes the sender name lookup
+        MessageDto messageDto = chatMetrics.stage("mapping").record(() -> messageDtoMapper.toDto(savedMessage));
         
-        // Add fileId for file messages
-        if ("FILE".equals(savedMessage.getMessageType())) {
-            // For file messages, use the message ID as fileId for download
-            messageDto.setContent(savedMessage.getContent()); // Keep the file icon + name format
-        }
+        messageHistoryCache.add(ConversationKeys.of(savedMessage.getSenderId(), savedMessage.getRecipientId()), messageDto);
         
-        // Route message based on type
-        if (savedMessage.getRecipientId() != null) {
-            // Direct message - send to both sender and recipient
-            messagingTemplate.convertAndSendToUser(savedMessage.getSenderId(), "/queue/messages", messageDto);
-            messagingTemplate.convertAndSendToUser(savedMessage.getRecipientId(), "/queue/messages", messageDto);
-        } else {
-            // General message - send to general topic
-            messagingTemplate.convertAndSend("/topic/general", messageDto);
-        }
+        chatMetrics.stage("broadcast").record(() -> messageBroadcaster.broadcast(messageDto));
     }
 
     @MessageMapping("/chat.typing")
     public void handleTyping(ChatMessage typingMessage) {
-        try {
-            Optional<User> user = userRepository.findById(typingMessage.getSenderId());
-            String userName = user.map(User::getUserName).orElse("Unknown");
-            String typingData = "{\"userId\":\"" + typingMessage.getSenderId() + "\",\"userName\":\"" + userName + "\",\"isTyping\":true}";
-            
-            if (typingMessage.getRecipientId() != null) {
-                // Direct message typing - send only to recipient
-                messagingTemplate.convertAndSendToUser(typingMessage.getRecipientId(), "/queue/typing", typingData);
-            } else {
-                // General chat typing - send to general topic
-                messagingTemplate.convertAndSend("/topic/typing", typingData);
-            }
-        } catch (Exception e) {
-            // Fallback for typing indicator
-            String typingData = "{\"userId\":\"" + typingMessage.getSenderId() + "\",\"userName\":\"Unknown\",\"isTyping\":true}";
-            if (typingMessage.getRecipientId() != null) {
-                messagingTemplate.convertAndSendToUser(typingMessage.getRecipientId(), "/queue/typing", typingData);
-            } else {
-                messagingTemplate.convertAndSend("/topic/typing", typingData);
-            }
-        }
+        typingService.startTyping(typingMessage.getSenderId(), typingMessage.getRecipientId());
     }
 
     @MessageMapping("/chat.stopTyping")
     public void handleStopTyping(ChatMessage typingMessage) {
-        try {
-            Optional<User> user = userRepository.findById(typingMessage.getSenderId());
-            String userName = user.map(User::getUserName).orElse("Unknown");
-            String typingData = "{\"userId\":\"" + typingMessage.getSenderId() + "\",\"userName\":\"" + userName + "\",\"isTyping\":false}";
-            
-            if (typingMessage.getRecipientId() != null) {
-                // Direct message stop typing - send only to recipient
-                messagingTemplate.convertAndSendToUser(typingMessage.getRecipientId(), "/queue/typing", typingData);
-            } else {
-                // General chat stop typing - send to general topic
-                messagingTemplate.convertAndSend("/topic/typing", typingData);
-            }
-        } catch (Exception e) {
-            // Fallback for stop typing indicator
-            String typingData = "{\"userId\":\"" + typingMessage.getSenderId() + "\",\"userName\":\"Unknown\",\"isTyping\":false}";
-            if (typingMessage.getRecipientId() != null) {
-                messagingTemplate.convertAndSendToUser(typingMessage.getRecipientId(), "/queue/typing", typingData);
-            } else {
-                messagingTemplate.convertAndSend("/topic/typing", typingData);
-            }
+        typingService.stopTyping(typingMessage.getSenderId(), typingMessage.getRecipientId());
+    }
+
+    @MessageMapping("/chat.sync")
+    public void handleSync(SyncRequest syncRequest) {
+        // Sent by clients right after (re)connecting; the reply only holds what they missed
+        if (syncRequest.getUserId() != null) {
+            messagingTemplate.convertAndSend("/user/" + syncRequest.getUserId() + "/queue/sync",
+                    syncService.sync(syncRequest));
         }
     }
-}
\ No newline at end of file
+}
@@ -13,5 +13,7 @@ public class ChatMessage {
     private String fileName;
     private String fileType;
     private Long fileSize;
+    // ID returned by POST /api/files/upload, for FILE messages
+    private Long attachmentId;
     private LocalDateTime sentAt;
 }
\ No newline at end of file
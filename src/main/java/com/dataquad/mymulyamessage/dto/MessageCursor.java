@@ -0,0 +1,34 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Keyset pagination position in message history, written as {@code <sentAt>,<id>}
+ * (e.g. {@code 2025-01-31T09:15:00.123,4821}) using the values of a returned message.
+ */
+@Value
+public class MessageCursor {
+    LocalDateTime sentAt;
+    Long id;
+
+    public static MessageCursor parse(String cursor) {
+        int separator = cursor.lastIndexOf(',');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Cursor must be <sentAt>,<id>");
+        }
+        try {
+            return new MessageCursor(LocalDateTime.parse(cursor.substring(0, separator).trim()),
+                    Long.parseLong(cursor.substring(separator + 1).trim()));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return sentAt + "," + id;
+    }
+}
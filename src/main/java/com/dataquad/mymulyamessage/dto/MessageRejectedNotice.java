@@ -0,0 +1,10 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Value;
+
+@Value
+public class MessageRejectedNotice {
+    String reason;
+    Long attachmentId;
+    Long messageId;
+}
@@ -0,0 +1,14 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of search results, best match first. {@code nextCursor} is null on the last page.
+ */
+@Value
+public class MessageSearchPage {
+    List<MessageDto> messages;
+    String nextCursor;
+}
@@ -0,0 +1,9 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Value;
+
+@Value
+public class PresenceEvent {
+    String userId;
+    boolean online;
+}
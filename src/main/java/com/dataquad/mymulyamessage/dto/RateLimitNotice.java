@@ -0,0 +1,9 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Value;
+
+@Value
+public class RateLimitNotice {
+    String limit;
+    String destination;
+}
@@ -0,0 +1,31 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Value;
+
+/**
+ * Keyset position in ranked search results, written as {@code <rank>,<id>} using the
+ * values of the last returned result.
+ */
+@Value
+public class SearchCursor {
+    Float rank;
+    Long id;
+
+    public static SearchCursor parse(String cursor) {
+        int separator = cursor.lastIndexOf(',');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Cursor must be <rank>,<id>");
+        }
+        try {
+            return new SearchCursor(Float.parseFloat(cursor.substring(0, separator).trim()),
+                    Long.parseLong(cursor.substring(separator + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return rank + "," + id;
+    }
+}
@@ -0,0 +1,20 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Last message IDs a client has seen. {@code lastSeen} is keyed by conversation
+ * ({@code general} or the conversationId of a direct conversation); conversations without
+ * an entry, including ones the client doesn't know about yet, are synced from {@code since}.
+ * {@code directCursor} continues a truncated sync (see {@link SyncResponse}).
+ */
+@Data
+public class SyncRequest {
+    private String userId;
+    private Map<String, Long> lastSeen = new HashMap<>();
+    private Long since;
+    private String directCursor;
+}
@@ -0,0 +1,19 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Messages newer than the client's last seen IDs, oldest first per conversation. When
+ * {@code complete} is false the response was truncated; sync again with the new IDs and,
+ * if set, {@code directCursor}, which resumes the scan of direct messages where this one
+ * stopped.
+ */
+@Value
+public class SyncResponse {
+    Map<String, List<MessageDto>> conversations;
+    boolean complete;
+    String directCursor;
+}
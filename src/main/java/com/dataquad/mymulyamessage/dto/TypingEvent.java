@@ -0,0 +1,12 @@
+package com.dataquad.mymulyamessage.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+@Value
+public class TypingEvent {
+    String userId;
+    String userName;
+    @JsonProperty("isTyping")
+    boolean typing;
+}
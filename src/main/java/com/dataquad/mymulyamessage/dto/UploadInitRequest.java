@@ -0,0 +1,12 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Data;
+
+// The file name isn't part of the upload: attachments are content-addressed and the name
+// is sent with the chat message (ChatMessage.fileName)
+@Data
+public class UploadInitRequest {
+    private Long size;
+    // Optional, defaults to chat.uploads.chunk-size
+    private Long chunkSize;
+}
@@ -0,0 +1,18 @@
+package com.dataquad.mymulyamessage.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * State of a chunked upload. Chunk {@code n} covers bytes {@code [n * chunkSize, min((n + 1) * chunkSize, size))};
+ * clients resume by sending the chunks missing from {@code receivedChunks}.
+ */
+@Value
+public class UploadStatus {
+    String uploadId;
+    long size;
+    long chunkSize;
+    int chunkCount;
+    List<Integer> receivedChunks;
+}
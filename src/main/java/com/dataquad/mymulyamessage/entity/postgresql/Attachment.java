@@ -0,0 +1,27 @@
+package com.dataquad.mymulyamessage.entity.postgresql;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row per distinct attachment content. Inserts go through AttachmentRepository's upsert.
+ */
+@Entity
+@Table(name = "attachments")
+@Data
+public class Attachment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "sha256", length = 64, nullable = false, unique = true)
+    private String sha256;
+    
+    @Column(name = "size", nullable = false)
+    private Long size;
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
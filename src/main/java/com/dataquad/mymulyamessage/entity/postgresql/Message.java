@@ -6,11 +6,15 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_recipient_sent_at", columnList = "recipient_id, sent_at, id"),
+    @Index(name = "idx_messages_conversation_sent_at", columnList = "conversation_id, sent_at, id"),
+    @Index(name = "idx_messages_sender_sent_at", columnList = "sender_id, sent_at, id")
+})
 @Data
 public class Message {
+    // Assigned by MessageIdGenerator; inserts go through MessageJdbcRepository
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
     @Column(name = "sender_id")
@@ -19,6 +23,10 @@ public class Message {
     @Column(name = "recipient_id")
     private String recipientId;
     
+    // Ordered pair of participants for direct messages, see ConversationKeys
+    @Column(name = "conversation_id", length = 101)
+    private String conversationId;
+    
     private String content;
     
     @Column(name = "file_name")
@@ -30,12 +38,16 @@ public class Message {
     @Column(name = "file_size")
     private Long fileSize;
     
+    @Column(name = "file_hash", length = 64)
+    private String fileHash;
+    
     @Column(name = "file_data", columnDefinition = "BYTEA")
     private byte[] fileData;
     
     @Column(name = "message_type")
     private String messageType = "TEXT";
     
-    @Column(name = "sent_at")
+    // Partition key of the messages table (monthly range partitions)
+    @Column(name = "sent_at", nullable = false)
     private LocalDateTime sentAt;
 }
\ No newline at end of file
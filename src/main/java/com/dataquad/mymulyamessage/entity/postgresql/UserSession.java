@@ -13,7 +13,7 @@ public class UserSession {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @Column(name = "user_id")
+    @Column(name = "user_id", unique = true)
     private String userId;
     
     @Column(name = "is_online")
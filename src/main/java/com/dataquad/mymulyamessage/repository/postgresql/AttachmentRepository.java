@@ -0,0 +1,38 @@
+package com.dataquad.mymulyamessage.repository.postgresql;
+
+import com.dataquad.mymulyamessage.storage.StoredAttachment;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Content-addressed attachment IDs. The same content always maps to the same ID.
+ */
+@Repository
+@RequiredArgsConstructor
+public class AttachmentRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns the ID for the given content, creating it if needed. A single statement, so
+     * concurrent uploads of the same content agree on the ID.
+     */
+    public long upsert(StoredAttachment attachment) {
+        // The no-op update makes RETURNING yield the existing row on conflict
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO attachments (sha256, size, created_at) VALUES (?, ?, now()) " +
+                "ON CONFLICT (sha256) DO UPDATE SET sha256 = EXCLUDED.sha256 RETURNING id",
+                Long.class, attachment.getHash(), attachment.getSize());
+    }
+
+    public Optional<StoredAttachment> findById(long id) {
+        List<StoredAttachment> attachments = jdbcTemplate.query(
+                "SELECT sha256, size FROM attachments WHERE id = ?",
+                (rs, rowNum) -> new StoredAttachment(rs.getString("sha256"), rs.getLong("size")), id);
+        return attachments.stream().findFirst();
+    }
+}
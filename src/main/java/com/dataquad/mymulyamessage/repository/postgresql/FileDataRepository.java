@@ -0,0 +1,44 @@
+package com.dataquad.mymulyamessage.repository.postgresql;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads legacy {@code messages.file_data} payloads over plain JDBC so they never go
+ * through the Hibernate entity, and clears them once moved to the attachment store.
+ */
+@Repository
+@RequiredArgsConstructor
+public class FileDataRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<Long> findIdsWithFileData(long afterId, int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM messages WHERE file_data IS NOT NULL AND file_hash IS NULL AND id > ? ORDER BY id LIMIT ?",
+                Long.class, afterId, limit);
+    }
+
+    public void moveToStore(Long messageId, String fileHash) {
+        jdbcTemplate.update("UPDATE messages SET file_hash = ?, file_data = NULL WHERE id = ?", fileHash, messageId);
+    }
+
+    public Optional<Long> length(Long messageId) {
+        List<Long> lengths = jdbcTemplate.queryForList(
+                "SELECT octet_length(file_data) FROM messages WHERE id = ? AND file_data IS NOT NULL",
+                Long.class, messageId);
+        return lengths.stream().findFirst();
+    }
+
+    public byte[] readSlice(Long messageId, long offset, int length) {
+        // substring() is 1-based and takes int positions (bytea is at most 1GB); with STORAGE
+        // EXTERNAL only the requested TOAST chunks are read
+        return jdbcTemplate.queryForObject(
+                "SELECT substring(file_data FROM ? FOR ?) FROM messages WHERE id = ?",
+                byte[].class, Math.toIntExact(offset + 1), length, messageId);
+    }
+}
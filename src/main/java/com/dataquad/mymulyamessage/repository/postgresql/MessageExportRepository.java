@@ -0,0 +1,108 @@
+package com.dataquad.mymulyamessage.repository.postgresql;
+
+import com.dataquad.mymulyamessage.entity.postgresql.Message;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Cursor-based reads for bulk exports. Rows are fetched {@code fetchSize} at a time and handed
+ * on one by one, so exports run in constant memory. Uses the export pool; PostgreSQL only uses
+ * a cursor inside a transaction, so callers must be transactional on
+ * {@code postgresqlExportTransactionManager}.
+ */
+@Repository
+public class MessageExportRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MessageExportRepository(@Qualifier("postgresqlExportDataSource") DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Distinct senders of the messages matching the filter, to resolve names up front.
+     */
+    public List<String> findSenderIds(ExportFilter filter) {
+        List<Object> args = new ArrayList<>();
+        String where = where(filter, args);
+        return jdbcTemplate.queryForList("SELECT DISTINCT sender_id FROM messages " + where, String.class, args.toArray());
+    }
+
+    /**
+     * Streams the messages matching the filter in (sent_at, id) order. {@code file_data} is not read.
+     */
+    public void stream(ExportFilter filter, int fetchSize, Consumer<Message> consumer) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT id, sender_id, recipient_id, conversation_id, content, file_name, file_type, file_size, " +
+                "file_hash, message_type, sent_at FROM messages " + where(filter, args) + "ORDER BY sent_at, id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(map(rs)));
+    }
+
+    // sent_at bounds also prune the monthly partitions
+    private String where(ExportFilter filter, List<Object> args) {
+        StringBuilder where = new StringBuilder("WHERE ");
+        switch (filter.scope()) {
+            case CONVERSATION -> {
+                where.append("conversation_id = ? ");
+                args.add(filter.conversationId());
+            }
+            case GENERAL -> where.append("recipient_id IS NULL ");
+            case ALL -> where.append("TRUE ");
+        }
+        if (filter.from() != null) {
+            where.append("AND sent_at >= ? ");
+            args.add(Timestamp.valueOf(filter.from()));
+        }
+        if (filter.to() != null) {
+            where.append("AND sent_at < ? ");
+            args.add(Timestamp.valueOf(filter.to()));
+        }
+        return where.toString();
+    }
+
+    private Message map(ResultSet rs) throws SQLException {
+        Message message = new Message();
+        message.setId(rs.getLong("id"));
+        message.setSenderId(rs.getString("sender_id"));
+        message.setRecipientId(rs.getString("recipient_id"));
+        message.setConversationId(rs.getString("conversation_id"));
+        message.setContent(rs.getString("content"));
+        message.setFileName(rs.getString("file_name"));
+        message.setFileType(rs.getString("file_type"));
+        message.setFileSize(rs.getObject("file_size", Long.class));
+        message.setFileHash(rs.getString("file_hash"));
+        message.setMessageType(rs.getString("message_type"));
+        message.setSentAt(rs.getObject("sent_at", LocalDateTime.class));
+        return message;
+    }
+
+    public enum Scope {
+        CONVERSATION, GENERAL, ALL
+    }
+
+    /**
+     * Messages of one direct conversation, general chat or everything, optionally limited to
+     * {@code [from, to)}.
+     */
+    public record ExportFilter(Scope scope, String conversationId, LocalDateTime from, LocalDateTime to) {
+    }
+}
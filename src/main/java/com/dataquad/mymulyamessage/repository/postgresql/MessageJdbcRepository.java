@@ -0,0 +1,65 @@
+package com.dataquad.mymulyamessage.repository.postgresql;
+
+import com.dataquad.mymulyamessage.entity.postgresql.Message;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Inserts messages with application-assigned IDs over JDBC, so they can be written in
+ * batches (JPA IDENTITY generation disables statement batching).
+ */
+@Repository
+@RequiredArgsConstructor
+public class MessageJdbcRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO messages " +
+            "(id, sender_id, recipient_id, conversation_id, content, file_name, file_type, file_size, file_hash, message_type, sent_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insert(Message message) {
+        jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, message));
+    }
+
+    public void insertAll(List<Message> messages) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, messages, messages.size(), this::bind);
+    }
+
+    /**
+     * Sets {@code conversation_id} on up to {@code limit} direct messages that lack it.
+     * Uses the "C" collation so the pair is ordered like {@link String#compareTo}.
+     */
+    public int backfillConversationIds(int limit) {
+        return jdbcTemplate.update("UPDATE messages SET conversation_id = CASE " +
+                "WHEN sender_id COLLATE \"C\" <= recipient_id COLLATE \"C\" THEN sender_id || ':' || recipient_id " +
+                "ELSE recipient_id || ':' || sender_id END " +
+                "WHERE id IN (SELECT id FROM messages WHERE recipient_id IS NOT NULL AND conversation_id IS NULL LIMIT ?)",
+                limit);
+    }
+
+    private void bind(PreparedStatement ps, Message message) throws SQLException {
+        ps.setLong(1, message.getId());
+        ps.setString(2, message.getSenderId());
+        ps.setString(3, message.getRecipientId());
+        ps.setString(4, message.getConversationId());
+        ps.setString(5, message.getContent());
+        ps.setString(6, message.getFileName());
+        ps.setString(7, message.getFileType());
+        if (message.getFileSize() != null) {
+            ps.setLong(8, message.getFileSize());
+        } else {
+            ps.setNull(8, Types.BIGINT);
+        }
+        ps.setString(9, message.getFileHash());
+        ps.setString(10, message.getMessageType());
+        ps.setTimestamp(11, message.getSentAt() != null ? Timestamp.valueOf(message.getSentAt()) : null);
+    }
+}
@@ -0,0 +1,93 @@
+package com.dataquad.mymulyamessage.repository.postgresql;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * DDL and bulk export for the monthly partitions of {@code messages} (see
+ * {@code db/migration/V2__partition_messages_by_month.sql}).
+ */
+@Repository
+@RequiredArgsConstructor
+public class MessagePartitionRepository {
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    // Everything except the generated search_vector, which is rebuilt on restore
+    private static final String ARCHIVE_COLUMNS = "id, sender_id, recipient_id, conversation_id, content, " +
+            "file_name, file_type, file_size, file_hash, file_data, message_type, sent_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Monthly partition tables, oldest first, whether attached to {@code messages}, being
+     * detached, or already detached and waiting to be archived. Requires PostgreSQL 14.
+     */
+    public List<MonthlyPartition> findMonthlyPartitions() {
+        return jdbcTemplate.query(
+                "SELECT c.relname, i.inhrelid IS NOT NULL AS attached, coalesce(i.inhdetachpending, false) AS detach_pending " +
+                "FROM pg_class c LEFT JOIN pg_inherits i ON i.inhrelid = c.oid AND i.inhparent = 'messages'::regclass " +
+                "WHERE c.relkind = 'r' AND c.relnamespace = current_schema()::regnamespace " +
+                "AND c.relname ~ '^messages_p[0-9]{4}_[0-9]{2}$' ORDER BY c.relname",
+                (rs, rowNum) -> new MonthlyPartition(
+                        YearMonth.parse(rs.getString("relname").substring("messages_p".length()), PARTITION_SUFFIX),
+                        rs.getBoolean("attached"), rs.getBoolean("detach_pending")));
+    }
+
+    public void createMonthlyPartition(YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF messages " +
+                "FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+    }
+
+    /**
+     * Detaches a month's partition without blocking reads and writes on {@code messages}: waits
+     * for transactions using the partition instead of taking an exclusive lock on the parent.
+     * Must not run in a transaction. If interrupted, finish with {@link #finalizeDetach}.
+     */
+    public void detachMonthlyPartition(YearMonth month) {
+        jdbcTemplate.execute("ALTER TABLE messages DETACH PARTITION " + partitionName(month) + " CONCURRENTLY");
+    }
+
+    public void finalizeDetach(YearMonth month) {
+        jdbcTemplate.execute("ALTER TABLE messages DETACH PARTITION " + partitionName(month) + " FINALIZE");
+    }
+
+    /**
+     * Streams all rows of a month's table to {@code out} as CSV with a header row, using COPY.
+     * Meant for detached partitions, which no longer receive writes.
+     *
+     * @return the number of rows written
+     */
+    public long exportMonthlyPartition(YearMonth month, OutputStream out) {
+        String copy = "COPY (SELECT " + ARCHIVE_COLUMNS + " FROM " + partitionName(month) + " ORDER BY sent_at, id) " +
+                "TO STDOUT WITH (FORMAT csv, HEADER)";
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(copy, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public void dropMonthlyPartition(YearMonth month) {
+        jdbcTemplate.execute("DROP TABLE " + partitionName(month));
+    }
+
+    public static String partitionName(YearMonth month) {
+        return "messages_p" + month.format(PARTITION_SUFFIX);
+    }
+
+    public record MonthlyPartition(YearMonth month, boolean attached, boolean detachPending) {
+    }
+}
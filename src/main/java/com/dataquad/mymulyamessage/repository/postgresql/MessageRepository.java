@@ -7,22 +7,120 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    List<Message> findAllByOrderBySentAtDesc(Pageable pageable);
+    String SUMMARY_SELECT = "SELECT m.id AS id, m.senderId AS senderId, m.recipientId AS recipientId, m.content AS content, " +
+           "m.fileName AS fileName, m.fileType AS fileType, m.fileSize AS fileSize, m.fileHash AS fileHash, " +
+           "m.messageType AS messageType, m.sentAt AS sentAt FROM Message m ";
     
-    List<Message> findByRecipientIdIsNullOrderBySentAtDesc(Pageable pageable);
+    // Single range read on the (conversation_id, sent_at, id) index
+    String DIRECT_CONVERSATION = "m.conversationId = :conversationId ";
     
-    @Query("SELECT m FROM Message m WHERE " +
-           "(m.senderId = :user1 AND m.recipientId = :user2) OR " +
-           "(m.senderId = :user2 AND m.recipientId = :user1) " +
-           "ORDER BY m.sentAt DESC")
-    List<Message> findDirectMessages(@Param("user1") String user1, 
-                                   @Param("user2") String user2, 
-                                   Pageable pageable);
+    // Full-text search over the generated search_vector column (GIN index idx_messages_search)
+    String SEARCH_SELECT = "SELECT m.id AS id, m.sender_id AS \"senderId\", m.recipient_id AS \"recipientId\", " +
+           "m.content AS content, m.file_name AS \"fileName\", m.file_type AS \"fileType\", " +
+           "m.file_size AS \"fileSize\", m.file_hash AS \"fileHash\", m.message_type AS \"messageType\", " +
+           "m.sent_at AS \"sentAt\", ts_rank(m.search_vector, q) AS rank " +
+           "FROM messages m, websearch_to_tsquery('simple', :query) q WHERE m.search_vector @@ q ";
     
-    Optional<Message> findBySenderIdAndFileNameAndMessageType(String senderId, String fileName, String messageType);
-}
\ No newline at end of file
+    // Keyset on (rank, id) for ranked pages
+    String SEARCH_AFTER = "AND (ts_rank(m.search_vector, q), m.id) < (:rank, :id) ";
+    
+    String SEARCH_ORDER = "ORDER BY rank DESC, id DESC";
+    
+    List<MessageSummary> findByRecipientIdIsNullOrderBySentAtDescIdDesc(Pageable pageable);
+    
+    // Keyset pages: (sentAt, id) row comparisons are served by the (recipient_id, sent_at, id) index.
+    // The plain sentAt bound is redundant for the result but lets PostgreSQL prune monthly partitions
+    String BEFORE = "m.sentAt <= :sentAt AND (m.sentAt, m.id) < (:sentAt, :id) ";
+    
+    String AFTER = "m.sentAt >= :sentAt AND (m.sentAt, m.id) > (:sentAt, :id) ";
+    
+    @Query(SUMMARY_SELECT + "WHERE m.recipientId IS NULL AND " + BEFORE +
+           "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageSummary> findGeneralMessagesBefore(@Param("sentAt") LocalDateTime sentAt,
+                                                   @Param("id") Long id,
+                                                   Pageable pageable);
+    
+    @Query(SUMMARY_SELECT + "WHERE m.recipientId IS NULL AND " + AFTER +
+           "ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageSummary> findGeneralMessagesAfter(@Param("sentAt") LocalDateTime sentAt,
+                                                  @Param("id") Long id,
+                                                  Pageable pageable);
+    
+    @Query(SUMMARY_SELECT + "WHERE " + DIRECT_CONVERSATION +
+           "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageSummary> findDirectMessages(@Param("conversationId") String conversationId, 
+                                          Pageable pageable);
+    
+    @Query(SUMMARY_SELECT + "WHERE " + DIRECT_CONVERSATION + "AND " + BEFORE +
+           "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageSummary> findDirectMessagesBefore(@Param("conversationId") String conversationId,
+                                                  @Param("sentAt") LocalDateTime sentAt,
+                                                  @Param("id") Long id,
+                                                  Pageable pageable);
+    
+    @Query(SUMMARY_SELECT + "WHERE " + DIRECT_CONVERSATION + "AND " + AFTER +
+           "ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageSummary> findDirectMessagesAfter(@Param("conversationId") String conversationId,
+                                                 @Param("sentAt") LocalDateTime sentAt,
+                                                 @Param("id") Long id,
+                                                 Pageable pageable);
+    
+    // Delta sync: messages after a last seen ID; sentAt bounds the range scan on the index
+    @Query(SUMMARY_SELECT + "WHERE m.recipientId IS NULL AND m.sentAt >= :sentAt AND m.id > :id " +
+           "ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageSummary> findGeneralMessagesSince(@Param("sentAt") LocalDateTime sentAt,
+                                                  @Param("id") Long id,
+                                                  Pageable pageable);
+    
+    // Received via the recipient index, sent via the sender index
+    @Query(SUMMARY_SELECT + "WHERE (m.recipientId = :userId OR (m.senderId = :userId AND m.recipientId IS NOT NULL)) " +
+           "AND m.sentAt >= :sentAt AND m.id > :id ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageSummary> findDirectMessagesForUserSince(@Param("userId") String userId,
+                                                        @Param("sentAt") LocalDateTime sentAt,
+                                                        @Param("id") Long id,
+                                                        Pageable pageable);
+    
+    // Continues a truncated sync from the last scanned (sentAt, id)
+    @Query(SUMMARY_SELECT + "WHERE (m.recipientId = :userId OR (m.senderId = :userId AND m.recipientId IS NOT NULL)) " +
+           "AND " + AFTER + "ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageSummary> findDirectMessagesForUserAfter(@Param("userId") String userId,
+                                                        @Param("sentAt") LocalDateTime sentAt,
+                                                        @Param("id") Long id,
+                                                        Pageable pageable);
+    
+    @Query(value = SEARCH_SELECT + "AND m.recipient_id IS NULL " + SEARCH_ORDER, nativeQuery = true)
+    List<MessageSearchResult> searchGeneralMessages(@Param("query") String query, Pageable pageable);
+    
+    @Query(value = SEARCH_SELECT + "AND m.recipient_id IS NULL " + SEARCH_AFTER + SEARCH_ORDER, nativeQuery = true)
+    List<MessageSearchResult> searchGeneralMessagesAfter(@Param("query") String query,
+                                                         @Param("rank") Float rank,
+                                                         @Param("id") Long id,
+                                                         Pageable pageable);
+    
+    @Query(value = SEARCH_SELECT + "AND m.conversation_id = :conversationId " + SEARCH_ORDER, nativeQuery = true)
+    List<MessageSearchResult> searchDirectMessages(@Param("query") String query,
+                                                   @Param("conversationId") String conversationId,
+                                                   Pageable pageable);
+    
+    @Query(value = SEARCH_SELECT + "AND m.conversation_id = :conversationId " + SEARCH_AFTER + SEARCH_ORDER,
+           nativeQuery = true)
+    List<MessageSearchResult> searchDirectMessagesAfter(@Param("query") String query,
+                                                        @Param("conversationId") String conversationId,
+                                                        @Param("rank") Float rank,
+                                                        @Param("id") Long id,
+                                                        Pageable pageable);
+    
+    // A lookup by id alone probes every monthly partition; callers bound sentAt where they can
+    Optional<MessageSummary> findSummaryById(Long id);
+    
+    @Query(SUMMARY_SELECT + "WHERE m.id = :id AND m.sentAt BETWEEN :from AND :to")
+    Optional<MessageSummary> findSummaryByIdSentBetween(@Param("id") Long id,
+                                                        @Param("from") LocalDateTime from,
+                                                        @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,8 @@
+package com.dataquad.mymulyamessage.repository.postgresql;
+
+/**
+ * Message summary with its full-text search rank.
+ */
+public interface MessageSearchResult extends MessageSummary {
+    Float getRank();
+}
@@ -0,0 +1,20 @@
+package com.dataquad.mymulyamessage.repository.postgresql;
+
+import java.time.LocalDateTime;
+
+/**
+ * Closed projection of {@link com.dataquad.mymulyamessage.entity.postgresql.Message}
+ * without the file payload, used for history reads.
+ */
+public interface MessageSummary {
+    Long getId();
+    String getSenderId();
+    String getRecipientId();
+    String getContent();
+    String getFileName();
+    String getFileType();
+    Long getFileSize();
+    String getFileHash();
+    String getMessageType();
+    LocalDateTime getSentAt();
+}
@@ -0,0 +1,65 @@
+package com.dataquad.mymulyamessage.repository.postgresql;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Batched writes and reads of presence state in {@code user_sessions} (one row per user).
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserSessionJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Upserts the activity of each user. A {@code null} online state leaves the stored one
+     * unchanged; last activity never moves backwards.
+     */
+    public void saveActivity(List<SessionActivity> activities) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO user_sessions (user_id, is_online, last_activity) VALUES (?, coalesce(?, false), ?) " +
+                "ON CONFLICT (user_id) DO UPDATE SET " +
+                "is_online = coalesce(?, user_sessions.is_online), " +
+                "last_activity = greatest(user_sessions.last_activity, excluded.last_activity)",
+                activities, activities.size(), (ps, activity) -> {
+                    ps.setString(1, activity.userId());
+                    ps.setObject(2, activity.online(), Types.BOOLEAN);
+                    ps.setTimestamp(3, Timestamp.valueOf(activity.lastActivity()));
+                    ps.setObject(4, activity.online(), Types.BOOLEAN);
+                });
+    }
+
+    /**
+     * Users with activity recorded after {@code since}, by any node.
+     */
+    public List<String> findActiveSince(LocalDateTime since) {
+        return jdbcTemplate.queryForList(
+                "SELECT user_id FROM user_sessions WHERE last_activity > ? ORDER BY user_id",
+                String.class, Timestamp.valueOf(since));
+    }
+
+    /**
+     * Those of {@code userIds} with activity recorded after {@code since}, by any node.
+     */
+    public List<String> findActiveSince(Collection<String> userIds, LocalDateTime since) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT user_id FROM user_sessions WHERE user_id = ANY (?) AND last_activity > ?");
+            ps.setArray(1, connection.createArrayOf("varchar", userIds.toArray()));
+            ps.setTimestamp(2, Timestamp.valueOf(since));
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+    }
+
+    public record SessionActivity(String userId, Boolean online, LocalDateTime lastActivity) {
+    }
+}
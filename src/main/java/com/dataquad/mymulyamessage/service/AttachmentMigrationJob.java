@@ -0,0 +1,56 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.service.AttachmentService.MigrationBatch;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves existing {@code messages.file_data} payloads into the attachment store in
+ * small batches. Rows that fail to move are skipped and counted, so one bad row doesn't stop
+ * the migration. Run VACUUM on {@code messages} once it reports completion.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "chat.attachments.migration.enabled", havingValue = "true")
+public class AttachmentMigrationJob {
+
+    private final AttachmentService attachmentService;
+
+    @Value("${chat.attachments.migration.batch-size:50}")
+    private int batchSize;
+
+    private volatile boolean completed;
+    // Rows are migrated in ID order; failed rows are skipped instead of retried by every batch
+    private long lastId = Long.MIN_VALUE;
+    private long failed;
+
+    @Scheduled(fixedDelayString = "${chat.attachments.migration.interval:1m}")
+    public void migrateBatch() {
+        if (completed) {
+            return;
+        }
+        try {
+            MigrationBatch batch = attachmentService.migrateLegacyFileData(lastId, batchSize);
+            if (batch.lastId() == null) {
+                completed = true;
+                if (failed == 0) {
+                    log.info("Attachment migration complete, no file_data rows left");
+                } else {
+                    log.warn("Attachment migration complete, {} rows could not be moved and keep their file_data; " +
+                            "restart to retry them", failed);
+                }
+                return;
+            }
+            lastId = batch.lastId();
+            failed += batch.failed();
+            log.info("Moved {} attachments out of the messages table ({} failed)", batch.migrated(), batch.failed());
+        } catch (Exception e) {
+            log.warn("Attachment migration batch failed: {}", e.getMessage());
+        }
+    }
+}
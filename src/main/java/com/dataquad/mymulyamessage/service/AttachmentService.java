@@ -0,0 +1,214 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.repository.postgresql.AttachmentRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.FileDataRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageSummary;
+import com.dataquad.mymulyamessage.storage.AttachmentStore;
+import com.dataquad.mymulyamessage.storage.StoredAttachment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Upload and download of file attachments without materialising whole files on the heap.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AttachmentService {
+
+    private final AttachmentRepository attachmentRepository;
+    private final FileDataRepository fileDataRepository;
+    private final AttachmentStore attachmentStore;
+
+    @Value("${chat.files.read-chunk-size:262144}")
+    private int readChunkSize;
+
+    /**
+     * Stores the uploaded content and returns its attachment ID. Identical content yields the
+     * same ID, so re-uploads are deduplicated.
+     */
+    public long upload(MultipartFile file) throws IOException {
+        // Multipart parts are spooled to disk, so this streams from disk straight into the store
+        try (InputStream data = file.getInputStream()) {
+            return store(data);
+        }
+    }
+
+    /**
+     * Stores content read from {@code data} and returns its attachment ID.
+     */
+    public long store(InputStream data) throws IOException {
+        return attachmentRepository.upsert(attachmentStore.store(data));
+    }
+
+    public Optional<StoredAttachment> find(long attachmentId) {
+        return attachmentRepository.findById(attachmentId);
+    }
+
+    public Optional<Resource> load(MessageSummary message) {
+        if (message.getFileHash() != null) {
+            return attachmentStore.load(message.getFileHash());
+        }
+        // Payload not yet migrated out of the messages table
+        return fileDataRepository.length(message.getId())
+                .map(length -> new FileDataResource(message.getId(), message.getFileName(), length));
+    }
+
+    /**
+     * Moves up to {@code batchSize} legacy BYTEA payloads with a message ID above {@code afterId}
+     * into the attachment store. A payload that fails to move is logged and skipped; it stays
+     * in {@code file_data} and is still served from there.
+     */
+    public MigrationBatch migrateLegacyFileData(long afterId, int batchSize) {
+        List<Long> messageIds = fileDataRepository.findIdsWithFileData(afterId, batchSize);
+        int migrated = 0;
+        int failed = 0;
+        for (Long messageId : messageIds) {
+            try {
+                Optional<Long> length = fileDataRepository.length(messageId);
+                if (length.isEmpty()) {
+                    continue;
+                }
+                StoredAttachment stored;
+                try (InputStream data = new FileDataInputStream(messageId, length.get())) {
+                    stored = attachmentStore.store(data);
+                }
+                fileDataRepository.moveToStore(messageId, stored.getHash());
+                migrated++;
+            } catch (Exception e) {
+                failed++;
+                log.warn("Failed to move file data of message {}, skipping it: {}", messageId, e.getMessage());
+            }
+        }
+        Long lastId = messageIds.isEmpty() ? null : messageIds.get(messageIds.size() - 1);
+        return new MigrationBatch(migrated, failed, lastId);
+    }
+
+    /**
+     * Outcome of one migration batch; {@code lastId} is where the next batch continues, or
+     * {@code null} when there was nothing left to migrate.
+     */
+    public record MigrationBatch(int migrated, int failed, Long lastId) {
+    }
+
+    public String etag(MessageSummary message) {
+        if (message.getFileHash() != null) {
+            return "\"" + message.getFileHash() + "\"";
+        }
+        long uploadedAt = message.getSentAt() != null ? message.getSentAt().toEpochSecond(ZoneOffset.UTC) : 0L;
+        return "\"" + message.getId() + "-" + Long.toHexString(uploadedAt) + "\"";
+    }
+
+    /**
+     * Lazily reads a legacy BYTEA payload in fixed-size slices. Skips (used for HTTP Range requests)
+     * only move the read position, so ranges never fetch the bytes before them.
+     */
+    private class FileDataResource extends AbstractResource {
+
+        private final Long messageId;
+        private final String fileName;
+        private final long length;
+
+        FileDataResource(Long messageId, String fileName, long length) {
+            this.messageId = messageId;
+            this.fileName = fileName;
+            this.length = length;
+        }
+
+        @Override
+        public String getDescription() {
+            return "File data of message " + messageId;
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new FileDataInputStream(messageId, length);
+        }
+    }
+
+    private class FileDataInputStream extends InputStream {
+
+        private final Long messageId;
+        private final long length;
+        private long position;
+        private byte[] buffer = new byte[0];
+        private int bufferPosition;
+
+        FileDataInputStream(Long messageId, long length) {
+            this.messageId = messageId;
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (bufferPosition >= buffer.length) {
+                if (position >= length) {
+                    return -1;
+                }
+                int sliceLength = (int) Math.min(readChunkSize, length - position);
+                buffer = fileDataRepository.readSlice(messageId, position, sliceLength);
+                bufferPosition = 0;
+                if (buffer == null || buffer.length == 0) {
+                    return -1;
+                }
+                position += buffer.length;
+            }
+            int count = Math.min(len, buffer.length - bufferPosition);
+            System.arraycopy(buffer, bufferPosition, target, offset, count);
+            bufferPosition += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            long buffered = buffer.length - bufferPosition;
+            if (n <= buffered) {
+                bufferPosition += (int) n;
+                return n;
+            }
+            long skipped = buffered + Math.min(n - buffered, length - position);
+            position += skipped - buffered;
+            buffer = new byte[0];
+            bufferPosition = 0;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.length - bufferPosition;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.dataquad.mymulyamessage.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the request paths that have no component of their own: stages of chat message
+ * handling and attachment transfers. Timers publish percentile histograms so p99 can be
+ * aggregated across nodes.
+ */
+@Component
+public class ChatMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> handlingTimers = new ConcurrentHashMap<>();
+    private final Timer uploadTimer;
+    private final Timer uploadChunkTimer;
+    private final Timer downloadTimer;
+    private final DistributionSummary uploadBytes;
+    private final DistributionSummary uploadChunkBytes;
+    private final DistributionSummary downloadBytes;
+
+    public ChatMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.uploadTimer = Timer.builder("chat.attachments.upload")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        // Transfers end after the handler returns (sendfile, Resource bodies), so only the lookup is
+        // timed here; total request time is in http.server.requests (uri=/api/files/{id})
+        this.downloadTimer = Timer.builder("chat.attachments.download.lookup")
+                .description("Time to resolve a download before its body is written")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.uploadBytes = DistributionSummary.builder("chat.attachments.upload.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        // Chunks of resumable uploads; a file is many chunks, so they aren't counted as uploads
+        this.uploadChunkTimer = Timer.builder("chat.attachments.upload.chunk")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.uploadChunkBytes = DistributionSummary.builder("chat.attachments.upload.chunk.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.downloadBytes = DistributionSummary.builder("chat.attachments.download.bytes")
+                .description("Size of attachments sent in full; excludes Range and conditional requests")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Timer for one stage of handling an incoming chat message (e.g. mapping, broadcast).
+     */
+    public Timer stage(String stage) {
+        return stageTimers.computeIfAbsent(stage, s -> Timer.builder("chat.message.stage")
+                .tag("stage", s)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    /**
+     * Records the total time spent handling one incoming chat message.
+     */
+    public void recordHandling(String messageType, long nanos) {
+        // Client supplied, so keep the tag values bounded
+        String type = "FILE".equals(messageType) ? "FILE" : "TEXT";
+        handlingTimers.computeIfAbsent(type, t -> Timer.builder("chat.message.handling")
+                        .tag("type", t)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordUpload(long bytes, long nanos) {
+        uploadBytes.record(bytes);
+        uploadTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordUploadChunk(long bytes, long nanos) {
+        uploadChunkBytes.record(bytes);
+        uploadChunkTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDownloadLookup(long nanos) {
+        downloadTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records an attachment sent in full. Not for Range or conditional requests, whose
+     * response size isn't known to the handler.
+     */
+    public void recordFullDownload(long bytes) {
+        downloadBytes.record(bytes);
+    }
+}
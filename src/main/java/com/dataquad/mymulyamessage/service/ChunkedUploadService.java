@@ -0,0 +1,261 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.UploadStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads for files beyond the multipart limit: init, put chunks (in any order
+ * and in parallel), then complete.
+ *
+ * <p>Each upload is a directory under {@code chat.uploads.root} holding its metadata and one
+ * file per received chunk, so uploads survive restarts and the received chunks can be listed
+ * for resuming. Completing streams the chunks in order into the attachment store. Uploads
+ * not completed within {@code chat.uploads.expiry} are deleted.
+ */
+@Slf4j
+@Service
+public class ChunkedUploadService {
+
+    private static final String METADATA_FILE = "upload.properties";
+    private static final String CHUNK_PREFIX = "chunk-";
+    private static final Pattern UPLOAD_ID = Pattern.compile("[0-9a-f]{32}");
+    private static final int COPY_BUFFER_SIZE = 65536;
+
+    private final AttachmentService attachmentService;
+    private final Path root;
+    private final long defaultChunkSize;
+    private final long minChunkSize;
+    private final long maxChunkSize;
+    private final long maxSize;
+    private final Duration expiry;
+    private final Set<String> completing = ConcurrentHashMap.newKeySet();
+
+    public ChunkedUploadService(AttachmentService attachmentService,
+                                @Value("${chat.uploads.root:uploads}") Path root,
+                                @Value("${chat.uploads.chunk-size:8MB}") DataSize defaultChunkSize,
+                                @Value("${chat.uploads.min-chunk-size:1MB}") DataSize minChunkSize,
+                                @Value("${chat.uploads.max-chunk-size:64MB}") DataSize maxChunkSize,
+                                @Value("${chat.uploads.max-size:5GB}") DataSize maxSize,
+                                @Value("${chat.uploads.expiry:24h}") Duration expiry) throws IOException {
+        this.attachmentService = attachmentService;
+        this.root = Files.createDirectories(root.toAbsolutePath());
+        this.defaultChunkSize = defaultChunkSize.toBytes();
+        this.minChunkSize = minChunkSize.toBytes();
+        this.maxChunkSize = maxChunkSize.toBytes();
+        this.maxSize = maxSize.toBytes();
+        this.expiry = expiry;
+    }
+
+    public UploadStatus init(long size, Long requestedChunkSize) throws IOException {
+        long chunkSize = requestedChunkSize != null ? requestedChunkSize : defaultChunkSize;
+        if (size <= 0 || size > maxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Size must be between 1 and " + maxSize + " bytes");
+        }
+        // Bounds the chunk count; smaller files are simply sent as a single chunk
+        if (chunkSize < Math.min(minChunkSize, size) || chunkSize > maxChunkSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Chunk size must be between " + minChunkSize + " and " + maxChunkSize + " bytes");
+        }
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+        Path directory = Files.createDirectories(root.resolve(uploadId));
+        Properties metadata = new Properties();
+        metadata.setProperty("size", Long.toString(size));
+        metadata.setProperty("chunkSize", Long.toString(chunkSize));
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(METADATA_FILE))) {
+            metadata.store(writer, null);
+        }
+        return new UploadStatus(uploadId, size, chunkSize, chunkCount(size, chunkSize), List.of());
+    }
+
+    public UploadStatus status(String uploadId) throws IOException {
+        Upload upload = open(uploadId);
+        return new UploadStatus(uploadId, upload.size(), upload.chunkSize(), upload.chunkCount(), receivedChunks(upload));
+    }
+
+    /**
+     * Streams one chunk to disk. Re-sending a chunk replaces it, so failed chunks can simply be retried.
+     * Reads at most one byte more than the chunk length, so an oversized body is rejected without
+     * being written out.
+     *
+     * @return the number of bytes written
+     */
+    public long putChunk(String uploadId, int index, InputStream data) throws IOException {
+        Upload upload = open(uploadId);
+        if (index < 0 || index >= upload.chunkCount()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Chunk index out of range");
+        }
+        long expected = upload.chunkLength(index);
+        Path part = Files.createTempFile(upload.directory(), CHUNK_PREFIX + index + "-", ".part");
+        try {
+            long written;
+            try (OutputStream out = Files.newOutputStream(part)) {
+                written = copy(data, out, expected + 1);
+            }
+            if (written != expected) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Chunk " + index + " must be " + expected + " bytes, got " + written);
+            }
+            // Only complete chunks become visible under their final name
+            Files.move(part, upload.chunk(index), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    /**
+     * Assembles the chunks into the attachment store and returns the attachment ID.
+     */
+    public long complete(String uploadId) throws IOException {
+        Upload upload = open(uploadId);
+        if (!completing.add(uploadId)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is already being completed");
+        }
+        try {
+            List<Integer> received = receivedChunks(upload);
+            if (received.size() != upload.chunkCount()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Missing " + (upload.chunkCount() - received.size()) + " chunks");
+            }
+            long attachmentId;
+            try (InputStream data = new SequenceInputStream(new ChunkStreams(upload))) {
+                attachmentId = attachmentService.store(data);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            FileSystemUtils.deleteRecursively(upload.directory());
+            return attachmentId;
+        } finally {
+            completing.remove(uploadId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.uploads.cleanup-interval:1h}")
+    public void deleteExpired() {
+        Instant cutoff = Instant.now().minus(expiry);
+        try (Stream<Path> uploads = Files.list(root)) {
+            for (Path directory : uploads.toList()) {
+                if (Files.getLastModifiedTime(directory).toInstant().isBefore(cutoff)
+                        && !completing.contains(directory.getFileName().toString())) {
+                    FileSystemUtils.deleteRecursively(directory);
+                    log.info("Deleted expired upload {}", directory.getFileName());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to clean up expired uploads: {}", e.getMessage());
+        }
+    }
+
+    private Upload open(String uploadId) throws IOException {
+        Path directory = UPLOAD_ID.matcher(uploadId).matches() ? root.resolve(uploadId) : null;
+        if (directory == null || !Files.isRegularFile(directory.resolve(METADATA_FILE))) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown upload " + uploadId);
+        }
+        Properties metadata = new Properties();
+        try (Reader reader = Files.newBufferedReader(directory.resolve(METADATA_FILE))) {
+            metadata.load(reader);
+        }
+        return new Upload(directory, Long.parseLong(metadata.getProperty("size")),
+                Long.parseLong(metadata.getProperty("chunkSize")));
+    }
+
+    private List<Integer> receivedChunks(Upload upload) {
+        List<Integer> received = new ArrayList<>();
+        for (int index = 0; index < upload.chunkCount(); index++) {
+            if (Files.isRegularFile(upload.chunk(index))) {
+                received.add(index);
+            }
+        }
+        return received;
+    }
+
+    private static long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long copied = 0;
+        int read;
+        while (copied < limit && (read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - copied))) >= 0) {
+            out.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    private static int chunkCount(long size, long chunkSize) {
+        return Math.toIntExact((size + chunkSize - 1) / chunkSize);
+    }
+
+    private record Upload(Path directory, long size, long chunkSize) {
+
+        int chunkCount() {
+            return ChunkedUploadService.chunkCount(size, chunkSize);
+        }
+
+        long chunkLength(int index) {
+            return Math.min(chunkSize, size - index * chunkSize);
+        }
+
+        Path chunk(int index) {
+            return directory.resolve(CHUNK_PREFIX + index);
+        }
+    }
+
+    /**
+     * Opens chunk files one at a time as the sequence reaches them.
+     */
+    private static class ChunkStreams implements Enumeration<InputStream> {
+
+        private final Upload upload;
+        private int next;
+
+        ChunkStreams(Upload upload) {
+            this.upload = upload;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return next < upload.chunkCount();
+        }
+
+        @Override
+        public InputStream nextElement() {
+            if (!hasMoreElements()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return Files.newInputStream(upload.chunk(next++));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.repository.postgresql.MessageJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills {@code conversation_id} on direct messages written before the column existed,
+ * in small batches so it never holds long locks on {@code messages}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "chat.conversations.backfill.enabled", havingValue = "true", matchIfMissing = true)
+public class ConversationBackfillJob {
+
+    private final MessageJdbcRepository messageJdbcRepository;
+
+    @Value("${chat.conversations.backfill.batch-size:1000}")
+    private int batchSize;
+
+    private volatile boolean completed;
+
+    @Scheduled(initialDelayString = "${chat.conversations.backfill.interval:10s}",
+               fixedDelayString = "${chat.conversations.backfill.interval:10s}")
+    public void backfillBatch() {
+        if (completed) {
+            return;
+        }
+        try {
+            int updated = messageJdbcRepository.backfillConversationIds(batchSize);
+            if (updated == 0) {
+                completed = true;
+                log.info("Conversation backfill complete");
+            } else {
+                log.info("Backfilled conversation_id on {} direct messages", updated);
+            }
+        } catch (Exception e) {
+            log.warn("Conversation backfill batch failed: {}", e.getMessage());
+        }
+    }
+}
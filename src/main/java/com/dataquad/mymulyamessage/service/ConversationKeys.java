@@ -0,0 +1,22 @@
+package com.dataquad.mymulyamessage.service;
+
+/**
+ * Canonical keys for conversations. A direct conversation is the ordered pair of its
+ * participants, so both directions of a DM share one {@code conversation_id}.
+ */
+public final class ConversationKeys {
+
+    private ConversationKeys() {
+    }
+
+    public static String direct(String user1, String user2) {
+        return user1.compareTo(user2) <= 0 ? user1 + ":" + user2 : user2 + ":" + user1;
+    }
+
+    /**
+     * Key stored on a message, or {@code null} for general chat.
+     */
+    public static String of(String senderId, String recipientId) {
+        return recipientId != null ? direct(senderId, recipientId) : null;
+    }
+}
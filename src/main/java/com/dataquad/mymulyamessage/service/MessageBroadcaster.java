@@ -0,0 +1,48 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.MessageDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Sends chat messages to their subscribers. Each message is serialised to JSON once and the
+ * same immutable payload is handed to every destination; the broker reuses it for every
+ * subscriber session.
+ */
+@Service
+@RequiredArgsConstructor
+public class MessageBroadcaster {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    public void broadcast(MessageDto messageDto) {
+        Message<byte[]> payload = serialize(messageDto);
+        if (messageDto.getRecipientId() != null) {
+            // Direct message - send to both sender and recipient
+            messagingTemplate.send("/user/" + messageDto.getSenderId() + "/queue/messages", payload);
+            messagingTemplate.send("/user/" + messageDto.getRecipientId() + "/queue/messages", payload);
+        } else {
+            // General message - send to general topic
+            messagingTemplate.send("/topic/general", payload);
+        }
+    }
+
+    private Message<byte[]> serialize(MessageDto messageDto) {
+        try {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            headers.setLeaveMutable(false);
+            return MessageBuilder.createMessage(objectMapper.writeValueAsBytes(messageDto), headers.getMessageHeaders());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialise message " + messageDto.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.MessageDto;
+import com.dataquad.mymulyamessage.entity.postgresql.Message;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+@RequiredArgsConstructor
+public class MessageDtoMapper {
+
+    private final UserDirectoryService userDirectoryService;
+
+    public List<MessageDto> toDtos(List<? extends MessageSummary> messages) {
+        // Resolve all sender names for the page in one lookup instead of one query per message
+        Map<String, String> senderNames = userDirectoryService.getUserNames(
+                messages.stream().map(MessageSummary::getSenderId).collect(Collectors.toSet()));
+        return messages.stream()
+                .map(message -> toDto(message, senderNames))
+                .collect(Collectors.toList());
+    }
+
+    public MessageDto toDto(Message message) {
+        return toDto(message, userDirectoryService.getUserName(message.getSenderId()));
+    }
+
+    /**
+     * Maps with names resolved up front, e.g. by {@link UserDirectoryService#getUserNames}.
+     */
+    public MessageDto toDto(Message message, Map<String, String> senderNames) {
+        return toDto(message, senderNames.getOrDefault(message.getSenderId(), "Unknown"));
+    }
+
+    private MessageDto toDto(Message message, String senderName) {
+        MessageDto dto = new MessageDto();
+        dto.setId(message.getId());
+        dto.setSenderId(message.getSenderId());
+        dto.setRecipientId(message.getRecipientId());
+        dto.setContent(message.getContent());
+        dto.setMessageType(message.getMessageType());
+        dto.setFileName(message.getFileName());
+        dto.setFileType(message.getFileType());
+        dto.setFileSize(message.getFileSize());
+        dto.setSentAt(message.getSentAt());
+        dto.setSenderName(senderName);
+        return dto;
+    }
+
+    private MessageDto toDto(MessageSummary message, Map<String, String> senderNames) {
+        MessageDto dto = new MessageDto();
+        dto.setId(message.getId());
+        dto.setSenderId(message.getSenderId());
+        dto.setRecipientId(message.getRecipientId());
+        dto.setContent(message.getContent());
+        dto.setFileName(message.getFileName());
+        dto.setFileType(message.getFileType());
+        dto.setFileSize(message.getFileSize());
+        dto.setMessageType(message.getMessageType());
+        dto.setSentAt(message.getSentAt());
+        dto.setSenderName(senderNames.getOrDefault(message.getSenderId(), "Unknown"));
+        return dto;
+    }
+}
@@ -0,0 +1,152 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.MessageDto;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageExportRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageExportRepository.ExportFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk export of message history as NDJSON (one {@link MessageDto} per line) or CSV.
+ *
+ * <p>Rows come straight from a JDBC cursor and are written as they arrive; sender names are
+ * resolved once for all senders in the export. Memory use doesn't depend on the export size.
+ * CSV cells that a spreadsheet would evaluate as a formula are prefixed with {@code '}.
+ */
+@Slf4j
+@Service
+public class MessageExportService {
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final String CSV_HEADER =
+            "id,sentAt,senderId,senderName,recipientId,messageType,content,fileName,fileType,fileSize\r\n";
+    // Leading characters that start a formula in Excel, LibreOffice and Google Sheets
+    private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+    private final MessageExportRepository messageExportRepository;
+    private final UserDirectoryService userDirectoryService;
+    private final MessageDtoMapper messageDtoMapper;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter dtoWriter;
+    private final int fetchSize;
+
+    public MessageExportService(MessageExportRepository messageExportRepository,
+                                UserDirectoryService userDirectoryService,
+                                MessageDtoMapper messageDtoMapper,
+                                ObjectMapper objectMapper,
+                                @Value("${chat.export.fetch-size:1000}") int fetchSize) {
+        this.messageExportRepository = messageExportRepository;
+        this.userDirectoryService = userDirectoryService;
+        this.messageDtoMapper = messageDtoMapper;
+        this.objectMapper = objectMapper;
+        // The response is flushed by the buffers, not once per row
+        this.dtoWriter = objectMapper.writerFor(MessageDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.fetchSize = fetchSize;
+    }
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    /**
+     * Writes all messages matching the filter to {@code out}, in (sentAt, id) order. Does not close {@code out}.
+     *
+     * @return the number of messages written
+     */
+    @Transactional(transactionManager = "postgresqlExportTransactionManager", readOnly = true)
+    public long export(ExportFilter filter, Format format, boolean gzip, OutputStream out) throws IOException {
+        Map<String, String> senderNames = userDirectoryService.getUserNames(messageExportRepository.findSenderIds(filter));
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(compressed != null ? compressed : out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long[] count = new long[1];
+        try {
+            if (format == Format.NDJSON) {
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                messageExportRepository.stream(filter, fetchSize, message -> {
+                    try {
+                        dtoWriter.writeValue(generator, messageDtoMapper.toDto(message, senderNames));
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+                generator.close();
+            } else {
+                writer.write(CSV_HEADER);
+                messageExportRepository.stream(filter, fetchSize, message -> {
+                    try {
+                        writeCsvRow(writer, messageDtoMapper.toDto(message, senderNames));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+            }
+        } catch (UncheckedIOException e) {
+            // Usually the client went away
+            throw e.getCause();
+        }
+        writer.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        log.info("Exported {} messages ({} {})", count[0], format, filter.scope());
+        return count[0];
+    }
+
+    private void writeCsvRow(Writer writer, MessageDto dto) throws IOException {
+        writer.write(Long.toString(dto.getId()));
+        // Same form as the JSON output (LocalDateTime.toString drops zero seconds)
+        writeCsvField(writer, dto.getSentAt() != null ? DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(dto.getSentAt()) : null);
+        writeCsvField(writer, dto.getSenderId());
+        writeCsvField(writer, dto.getSenderName());
+        writeCsvField(writer, dto.getRecipientId());
+        writeCsvField(writer, dto.getMessageType());
+        writeCsvField(writer, dto.getContent());
+        writeCsvField(writer, dto.getFileName());
+        writeCsvField(writer, dto.getFileType());
+        writeCsvField(writer, dto.getFileSize());
+        writer.write("\r\n");
+    }
+
+    // RFC 4180: quote fields containing separators, quotes or line breaks; null is an empty field
+    private void writeCsvField(Writer writer, Object value) throws IOException {
+        writer.write(',');
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (!text.isEmpty() && FORMULA_PREFIXES.indexOf(text.charAt(0)) >= 0 && !(value instanceof Number)) {
+            // Message content is user input; don't let spreadsheets run it as a formula
+            text = "'" + text;
+        }
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,212 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.MessageDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Most recent messages of hot conversations, so opening a chat doesn't query the database.
+ *
+ * <p>Each conversation keeps a ring buffer of its newest {@code chat.history.cache.size}
+ * messages. A conversation is loaded on its first read and then kept current by
+ * {@link #add}; the least recently used conversations are evicted beyond
+ * {@code chat.history.cache.max-conversations}.
+ *
+ * <p>{@link #add} only sees messages sent through this node, and messages can still disappear
+ * from the database (a failed write-behind insert, retention). Each conversation is therefore
+ * reloaded {@code chat.history.cache.ttl} after it was loaded, and conversations are evicted
+ * when one of their messages fails to persist. In {@code chat.broker.mode=relay} messages are
+ * sent through several nodes, so the cache is disabled and every read goes to the database.
+ */
+@Service
+public class MessageHistoryCache {
+
+    // Direct conversation keys always contain ':', so this can't collide
+    private static final String GENERAL = "general";
+
+    private static final Comparator<MessageDto> BY_POSITION = Comparator
+            .comparing(MessageDto::getSentAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(MessageDto::getId);
+
+    private final boolean enabled;
+    private final int capacity;
+    private final long ttlNanos;
+    private final Map<String, RecentMessages> conversations;
+    private final Counter hits;
+    private final Counter misses;
+
+    public MessageHistoryCache(MeterRegistry meterRegistry,
+                               @Value("${chat.history.cache.size:50}") int capacity,
+                               @Value("${chat.history.cache.max-conversations:10000}") int maxConversations,
+                               @Value("${chat.history.cache.ttl:30s}") Duration ttl,
+                               @Value("${chat.broker.mode:simple}") String brokerMode) {
+        this.enabled = !"relay".equals(brokerMode);
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+        this.conversations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RecentMessages> eldest) {
+                return size() > maxConversations;
+            }
+        };
+        this.hits = Counter.builder("chat.history.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("chat.history.cache").tag("result", "miss").register(meterRegistry);
+        meterRegistry.gaugeMapSize("chat.history.cache.conversations", Tags.empty(), conversations);
+    }
+
+    /**
+     * Returns the newest {@code limit} messages of a conversation ({@code null} for general
+     * chat), newest first. On a miss {@code loader} is called with the number of newest
+     * messages to read from the database.
+     */
+    public List<MessageDto> latest(String conversationId, int limit, IntFunction<List<MessageDto>> loader) {
+        if (!enabled) {
+            return loader.apply(limit);
+        }
+        if (limit > capacity) {
+            misses.increment();
+            return loader.apply(limit);
+        }
+        String key = key(conversationId);
+        RecentMessages recent;
+        boolean loading = false;
+        synchronized (conversations) {
+            recent = conversations.get(key);
+            if (recent == null || recent.isExpired()) {
+                recent = new RecentMessages();
+                conversations.put(key, recent);
+                loading = true;
+            }
+        }
+
+        if (!loading) {
+            List<MessageDto> cached = recent.latest(limit);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            // Another request is still loading this conversation
+            misses.increment();
+            return loader.apply(limit);
+        }
+
+        misses.increment();
+        List<MessageDto> loaded;
+        try {
+            loaded = loader.apply(capacity);
+        } catch (RuntimeException e) {
+            synchronized (conversations) {
+                conversations.remove(key, recent);
+            }
+            throw e;
+        }
+        recent.fill(loaded);
+        return recent.latest(limit);
+    }
+
+    /**
+     * Adds a new or updated message to its conversation if that conversation is cached.
+     */
+    public void add(String conversationId, MessageDto message) {
+        RecentMessages recent;
+        synchronized (conversations) {
+            recent = conversations.get(key(conversationId));
+        }
+        if (recent != null) {
+            recent.add(message);
+        }
+    }
+
+    /**
+     * Drops a cached conversation, e.g. because one of its messages failed to persist.
+     */
+    public void evict(String conversationId) {
+        synchronized (conversations) {
+            conversations.remove(key(conversationId));
+        }
+    }
+
+    private static String key(String conversationId) {
+        return conversationId != null ? conversationId : GENERAL;
+    }
+
+    private class RecentMessages {
+
+        // Oldest first; messages written while the initial load runs are merged into it
+        private final ArrayDeque<MessageDto> messages = new ArrayDeque<>(capacity + 1);
+        // Counted from the start of the load, so adds don't extend it
+        private final long expiresAt = System.nanoTime() + ttlNanos;
+        private boolean loaded;
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+
+        synchronized void fill(List<MessageDto> newestFirst) {
+            ListIterator<MessageDto> oldestFirst = newestFirst.listIterator(newestFirst.size());
+            while (oldestFirst.hasPrevious()) {
+                MessageDto message = oldestFirst.previous();
+                if (!contains(message.getId())) {
+                    insert(message);
+                }
+            }
+            loaded = true;
+        }
+
+        synchronized void add(MessageDto message) {
+            messages.removeIf(cached -> cached.getId().equals(message.getId()));
+            insert(message);
+        }
+
+        synchronized List<MessageDto> latest(int limit) {
+            if (!loaded) {
+                return null;
+            }
+            List<MessageDto> result = new ArrayList<>(Math.min(limit, messages.size()));
+            Iterator<MessageDto> newestFirst = messages.descendingIterator();
+            while (newestFirst.hasNext() && result.size() < limit) {
+                result.add(newestFirst.next());
+            }
+            return result;
+        }
+
+        private boolean contains(Long id) {
+            for (MessageDto cached : messages) {
+                if (cached.getId().equals(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void insert(MessageDto message) {
+            if (messages.isEmpty() || BY_POSITION.compare(message, messages.peekLast()) > 0) {
+                messages.addLast(message);
+            } else {
+                // Out of order (e.g. a re-sent upload); rare, so just re-sort
+                List<MessageDto> sorted = new ArrayList<>(messages);
+                sorted.add(message);
+                sorted.sort(BY_POSITION);
+                messages.clear();
+                messages.addAll(sorted);
+            }
+            while (messages.size() > capacity) {
+                messages.pollFirst();
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.MessageRejectedNotice;
+import com.dataquad.mymulyamessage.entity.postgresql.Message;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists chat messages either synchronously or write-behind.
+ *
+ * <p>In {@code write-behind} mode messages are queued in a bounded buffer and inserted in
+ * JDBC batches by a background flusher. With {@code ack=after-broadcast} the message is
+ * published as soon as it is queued; with {@code ack=after-flush} it is published once its
+ * batch is committed. When the buffer is full the caller writes the message itself, which
+ * slows producers down instead of dropping messages. When a message fails to persist its
+ * sender gets a {@link MessageRejectedNotice} on {@code /user/{senderId}/queue/errors}, and
+ * if it was already published it is evicted from the {@link MessageHistoryCache}.
+ */
+@Slf4j
+@Service
+public class MessagePersistenceService {
+
+    private final MessageJdbcRepository messageJdbcRepository;
+    private final MessageHistoryCache messageHistoryCache;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final boolean writeBehind;
+    private final boolean ackAfterFlush;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration offerTimeout;
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final Timer flushTimer;
+    private final Timer persistLatency;
+    private final DistributionSummary batchSizes;
+    private final Counter overflows;
+    private final Counter failures;
+
+    public MessagePersistenceService(MessageJdbcRepository messageJdbcRepository,
+                                     MessageHistoryCache messageHistoryCache,
+                                     @Lazy SimpMessagingTemplate messagingTemplate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${chat.persistence.mode:sync}") String mode,
+                                     @Value("${chat.persistence.ack:after-broadcast}") String ack,
+                                     @Value("${chat.persistence.queue-capacity:10000}") int queueCapacity,
+                                     @Value("${chat.persistence.batch-size:200}") int batchSize,
+                                     @Value("${chat.persistence.flush-interval:50ms}") Duration flushInterval,
+                                     @Value("${chat.persistence.offer-timeout:100ms}") Duration offerTimeout) {
+        this.messageJdbcRepository = messageJdbcRepository;
+        this.messageHistoryCache = messageHistoryCache;
+        this.messagingTemplate = messagingTemplate;
+        this.writeBehind = "write-behind".equals(mode);
+        this.ackAfterFlush = "after-flush".equals(ack);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.offerTimeout = offerTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.flushTimer = Timer.builder("chat.persistence.flush")
+                .description("Time to write one batch of messages")
+                .register(meterRegistry);
+        this.persistLatency = Timer.builder("chat.persistence.latency")
+                .description("Time from accepting a message until it is committed")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("chat.persistence.batch.size")
+                .register(meterRegistry);
+        this.overflows = Counter.builder("chat.persistence.overflow")
+                .description("Messages written synchronously because the write-behind queue was full")
+                .register(meterRegistry);
+        this.failures = Counter.builder("chat.persistence.failures")
+                .register(meterRegistry);
+        meterRegistry.gauge("chat.persistence.queue.size", queue, BlockingQueue::size);
+
+        this.flusher = new Thread(this::flushLoop, "message-write-behind");
+        this.flusher.setDaemon(true);
+        if (writeBehind) {
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Persists the message and runs {@code publish} according to the configured mode.
+     */
+    public void persist(Message message, Runnable publish) {
+        long acceptedAt = System.nanoTime();
+        if (!writeBehind) {
+            messageJdbcRepository.insert(message);
+            persistLatency.record(System.nanoTime() - acceptedAt, TimeUnit.NANOSECONDS);
+            publish.run();
+            return;
+        }
+
+        if (!ackAfterFlush) {
+            publish.run();
+        }
+        PendingMessage pending = new PendingMessage(message, ackAfterFlush ? publish : null, acceptedAt);
+        if (!enqueue(pending)) {
+            // Queue is full: apply backpressure by writing on the caller's thread
+            overflows.increment();
+            try {
+                messageJdbcRepository.insert(message);
+            } catch (RuntimeException e) {
+                failed(pending);
+                throw e;
+            }
+            completed(pending);
+        }
+    }
+
+    private boolean enqueue(PendingMessage pending) {
+        try {
+            return queue.offer(pending, offerTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Woken up for shutdown; remaining messages are drained by the loop condition
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        long start = System.nanoTime();
+        try {
+            messageJdbcRepository.insertAll(batch.stream().map(PendingMessage::message).toList());
+            batch.forEach(this::completed);
+        } catch (Exception e) {
+            // Retry row by row so one bad message doesn't lose the whole batch
+            log.warn("Batch insert of {} messages failed, retrying individually: {}", batch.size(), e.getMessage());
+            for (PendingMessage pending : batch) {
+                try {
+                    messageJdbcRepository.insert(pending.message());
+                    completed(pending);
+                } catch (Exception rowError) {
+                    failed(pending);
+                    log.error("Failed to persist message {}: {}", pending.message().getId(), rowError.getMessage());
+                }
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+        }
+    }
+
+    private void completed(PendingMessage pending) {
+        persistLatency.record(System.nanoTime() - pending.acceptedAt(), TimeUnit.NANOSECONDS);
+        if (pending.publish() != null) {
+            try {
+                pending.publish().run();
+            } catch (Exception e) {
+                log.warn("Failed to publish message {}: {}", pending.message().getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void failed(PendingMessage pending) {
+        failures.increment();
+        if (pending.publish() == null) {
+            // Already published (ack=after-broadcast), so it may be in the history cache
+            messageHistoryCache.evict(pending.message().getConversationId());
+        }
+        Message message = pending.message();
+        try {
+            messagingTemplate.convertAndSend("/user/" + message.getSenderId() + "/queue/errors",
+                    new MessageRejectedNotice("persist-failed", null, message.getId()));
+        } catch (Exception e) {
+            log.debug("Failed to notify {} of message {}: {}", message.getSenderId(), message.getId(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writeBehind) {
+            flusher.interrupt();
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    private record PendingMessage(Message message, Runnable publish, long acceptedAt) {
+    }
+}
@@ -0,0 +1,102 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.repository.postgresql.MessagePartitionRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.MessagePartitionRepository.MonthlyPartition;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the monthly partitions of {@code messages} ahead of time and applies the retention
+ * policy.
+ *
+ * <p>Partitions are created {@code chat.partitions.months-ahead} months in advance; there is no
+ * default partition, so the job must be enabled on at least one node or inserts fail once the
+ * months run out. With {@code chat.partitions.retention-months} set, partitions whose whole month
+ * is older than that are detached concurrently (no lock that blocks chat traffic), exported to
+ * {@code chat.partitions.archive-dir} as gzipped CSV and dropped. Detaching first means nothing
+ * can be written to a partition after it was exported. Each step resumes where an interrupted
+ * run stopped, and dropping a partition avoids the bloat and vacuum work of deleting rows.
+ * Retention needs PostgreSQL 14 or later.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.partitions.maintenance.enabled", havingValue = "true", matchIfMissing = true)
+public class PartitionMaintenanceJob {
+
+    private final MessagePartitionRepository partitionRepository;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final Path archiveDir;
+
+    public PartitionMaintenanceJob(MessagePartitionRepository partitionRepository,
+                                   @Value("${chat.partitions.months-ahead:2}") int monthsAhead,
+                                   @Value("${chat.partitions.retention-months:0}") int retentionMonths,
+                                   @Value("${chat.partitions.archive-dir:archive}") Path archiveDir) {
+        this.partitionRepository = partitionRepository;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archiveDir = archiveDir.toAbsolutePath();
+    }
+
+    @Scheduled(initialDelayString = "${chat.partitions.initial-delay:1m}",
+               fixedDelayString = "${chat.partitions.interval:6h}")
+    public void maintain() {
+        YearMonth now = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            try {
+                partitionRepository.createMonthlyPartition(now.plusMonths(i));
+            } catch (Exception e) {
+                log.warn("Failed to create partition {}: {}",
+                        MessagePartitionRepository.partitionName(now.plusMonths(i)), e.getMessage());
+            }
+        }
+        if (retentionMonths > 0) {
+            YearMonth oldestKept = now.minusMonths(retentionMonths);
+            for (MonthlyPartition partition : partitionRepository.findMonthlyPartitions()) {
+                if (partition.month().isBefore(oldestKept)) {
+                    archive(partition);
+                }
+            }
+        }
+    }
+
+    private void archive(MonthlyPartition partition) {
+        YearMonth month = partition.month();
+        String name = MessagePartitionRepository.partitionName(month);
+        Path target = archiveDir.resolve(name + ".csv.gz");
+        try {
+            if (partition.detachPending()) {
+                partitionRepository.finalizeDetach(month);
+            } else if (partition.attached()) {
+                partitionRepository.detachMonthlyPartition(month);
+            }
+            Files.createDirectories(archiveDir);
+            Path part = Files.createTempFile(archiveDir, name + "-", ".part");
+            try {
+                long rows;
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(part), 65536)) {
+                    rows = partitionRepository.exportMonthlyPartition(month, out);
+                }
+                // Only drop once the archive is complete and in place
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                partitionRepository.dropMonthlyPartition(month);
+                log.info("Archived {} messages from {} to {} and dropped the partition", rows, name, target);
+            } finally {
+                Files.deleteIfExists(part);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to archive partition {}: {}", name, e.getMessage());
+        }
+    }
+}
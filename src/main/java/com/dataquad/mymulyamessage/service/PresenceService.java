@@ -0,0 +1,274 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.PresenceEvent;
+import com.dataquad.mymulyamessage.repository.postgresql.UserSessionJdbcRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.UserSessionJdbcRepository.SessionActivity;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which users are online from their STOMP sessions.
+ *
+ * <p>A user is online while at least one session is connected. Clients that don't send a
+ * {@code userId} on CONNECT yet are kept online for {@code chat.presence.login-online-ttl}
+ * after logging in through the REST API, as before presence followed sessions. Transitions
+ * are pushed to {@code /topic/presence}; activity timestamps are kept in memory and written
+ * to {@code user_sessions} in batches on {@code chat.presence.flush-interval}.
+ *
+ * <p>Sessions are only known to the node they are connected to. In {@code chat.broker.mode=relay}
+ * a node therefore doesn't write {@code is_online}, only activity (refreshed for its online
+ * users on every flush), and the online users are those active within
+ * {@code chat.presence.online-window} on any node. A user whose last session on this node
+ * ended is only announced offline once no node has refreshed their activity for that window.
+ */
+@Slf4j
+@Service
+public class PresenceService {
+
+    public static final String PRESENCE_TOPIC = "/topic/presence";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final UserSessionJdbcRepository userSessionJdbcRepository;
+    private final boolean relay;
+    private final Duration onlineWindow;
+    private final Duration loginOnlineTtl;
+
+    // userId -> connected session ids
+    private final Map<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<String, String> userBySession = new ConcurrentHashMap<>();
+    // userId -> end (epoch millis) of being online after a REST login without a session
+    private final Map<String, Long> loginOnlineUntil = new ConcurrentHashMap<>();
+    // userId -> last activity (epoch millis) not yet written to the database
+    private final Map<String, Long> pendingActivity = new ConcurrentHashMap<>();
+    // Relay mode: userId -> time (epoch millis) the user went offline on this node
+    private final Map<String, Long> pendingOffline = new ConcurrentHashMap<>();
+
+    // Lazy: the inbound channel interceptor needs this service while the broker config is built
+    public PresenceService(@Lazy SimpMessagingTemplate messagingTemplate,
+                           UserSessionJdbcRepository userSessionJdbcRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${chat.broker.mode:simple}") String brokerMode,
+                           @Value("${chat.presence.online-window:90s}") Duration onlineWindow,
+                           @Value("${chat.presence.login-online-ttl:30m}") Duration loginOnlineTtl) {
+        this.messagingTemplate = messagingTemplate;
+        this.userSessionJdbcRepository = userSessionJdbcRepository;
+        this.relay = "relay".equals(brokerMode);
+        this.onlineWindow = onlineWindow;
+        this.loginOnlineTtl = loginOnlineTtl;
+        meterRegistry.gaugeMapSize("chat.presence.online", Tags.empty(), sessionsByUser);
+    }
+
+    public void connected(String userId, String sessionId) {
+        userBySession.put(sessionId, userId);
+        boolean[] cameOnline = {false};
+        sessionsByUser.compute(userId, (id, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                cameOnline[0] = true;
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+        touch(userId);
+        pendingOffline.remove(userId);
+        if (cameOnline[0] && !loggedInWithoutSession(userId)) {
+            publish(userId, true);
+        }
+    }
+
+    /**
+     * Marks a user online after a REST login, for clients that don't identify their STOMP
+     * session on CONNECT yet.
+     */
+    public void loggedIn(String userId) {
+        boolean wasOnline = isOnline(userId);
+        loginOnlineUntil.put(userId, System.currentTimeMillis() + loginOnlineTtl.toMillis());
+        touch(userId);
+        pendingOffline.remove(userId);
+        if (!wasOnline) {
+            publish(userId, true);
+        }
+    }
+
+    public void disconnected(String sessionId) {
+        String userId = userBySession.remove(sessionId);
+        if (userId == null) {
+            return;
+        }
+        boolean[] wentOffline = {false};
+        sessionsByUser.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(sessionId);
+            wentOffline[0] = sessions.isEmpty();
+            return wentOffline[0] ? null : sessions;
+        });
+        touch(userId);
+        if (wentOffline[0] && !loggedInWithoutSession(userId)) {
+            wentOffline(userId);
+        }
+    }
+
+    /**
+     * Records activity for the user of a session (any frame, including heartbeats).
+     */
+    public void sessionActivity(String sessionId) {
+        String userId = userBySession.get(sessionId);
+        if (userId != null) {
+            touch(userId);
+        }
+    }
+
+    public void touch(String userId) {
+        pendingActivity.put(userId, System.currentTimeMillis());
+    }
+
+    /**
+     * Whether the user is online on this node.
+     */
+    public boolean isOnline(String userId) {
+        return sessionsByUser.containsKey(userId) || loggedInWithoutSession(userId);
+    }
+
+    public List<String> getOnlineUsers() {
+        if (relay) {
+            return userSessionJdbcRepository.findActiveSince(LocalDateTime.now().minus(onlineWindow));
+        }
+        Set<String> online = new TreeSet<>(sessionsByUser.keySet());
+        loginOnlineUntil.keySet().stream().filter(this::loggedInWithoutSession).forEach(online::add);
+        return new ArrayList<>(online);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval:30s}")
+    public void flush() {
+        expireLogins();
+        if (relay) {
+            // Keeps users online here within the online window on other nodes
+            sessionsByUser.keySet().forEach(this::touch);
+            loginOnlineUntil.keySet().forEach(this::touch);
+        }
+        writeActivity();
+        if (relay) {
+            publishClusterOffline();
+        }
+    }
+
+    private void writeActivity() {
+        if (pendingActivity.isEmpty()) {
+            return;
+        }
+        List<SessionActivity> batch = new ArrayList<>(pendingActivity.size());
+        for (String userId : pendingActivity.keySet()) {
+            Long lastActivity = pendingActivity.remove(userId);
+            if (lastActivity != null) {
+                batch.add(new SessionActivity(userId, relay ? null : isOnline(userId), toLocalDateTime(lastActivity)));
+            }
+        }
+        try {
+            userSessionJdbcRepository.saveActivity(batch);
+        } catch (Exception e) {
+            // Keep the entries for the next flush unless newer activity has arrived meanwhile
+            log.warn("Failed to write activity for {} users: {}", batch.size(), e.getMessage());
+            for (SessionActivity activity : batch) {
+                pendingActivity.putIfAbsent(activity.userId(),
+                        activity.lastActivity().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Sessions on this node end with it
+        for (String userId : sessionsByUser.keySet()) {
+            pendingActivity.putIfAbsent(userId, System.currentTimeMillis());
+        }
+        for (String userId : loginOnlineUntil.keySet()) {
+            pendingActivity.putIfAbsent(userId, System.currentTimeMillis());
+        }
+        sessionsByUser.clear();
+        userBySession.clear();
+        loginOnlineUntil.clear();
+        writeActivity();
+    }
+
+    private boolean loggedInWithoutSession(String userId) {
+        Long until = loginOnlineUntil.get(userId);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    private void expireLogins() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> login : loginOnlineUntil.entrySet()) {
+            if (login.getValue() <= now && loginOnlineUntil.remove(login.getKey(), login.getValue())
+                    && !sessionsByUser.containsKey(login.getKey())) {
+                wentOffline(login.getKey());
+            }
+        }
+    }
+
+    private void wentOffline(String userId) {
+        if (relay) {
+            // The user may still be connected to another node; decided in publishClusterOffline
+            pendingOffline.put(userId, System.currentTimeMillis());
+        } else {
+            publish(userId, false);
+        }
+    }
+
+    /**
+     * Announces users who went offline here once no node has recorded activity for them within
+     * the online window. Other nodes keep refreshing the activity of users connected to them.
+     */
+    private void publishClusterOffline() {
+        long cutoff = System.currentTimeMillis() - onlineWindow.toMillis();
+        List<String> candidates = pendingOffline.entrySet().stream()
+                .filter(entry -> entry.getValue() <= cutoff)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (candidates.isEmpty()) {
+            return;
+        }
+        Set<String> active;
+        try {
+            active = new HashSet<>(userSessionJdbcRepository.findActiveSince(candidates, toLocalDateTime(cutoff)));
+        } catch (Exception e) {
+            log.warn("Failed to read activity of {} users: {}", candidates.size(), e.getMessage());
+            return;
+        }
+        for (String userId : candidates) {
+            // Still online elsewhere: that node announces it when the user leaves there
+            if (pendingOffline.remove(userId) != null && !active.contains(userId) && !isOnline(userId)) {
+                publish(userId, false);
+            }
+        }
+    }
+
+    private void publish(String userId, boolean online) {
+        try {
+            messagingTemplate.convertAndSend(PRESENCE_TOPIC, new PresenceEvent(userId, online));
+        } catch (Exception e) {
+            log.debug("Failed to publish presence for {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,108 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.MessageCursor;
+import com.dataquad.mymulyamessage.dto.MessageDto;
+import com.dataquad.mymulyamessage.dto.SyncRequest;
+import com.dataquad.mymulyamessage.dto.SyncResponse;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental sync for reconnecting clients: returns only messages newer than the IDs the
+ * client has already seen, across general chat and all of the user's direct conversations.
+ *
+ * <p>Message IDs are time ordered, so a last seen ID is turned into a {@code sent_at} lower
+ * bound (minus {@code chat.sync.clock-skew} for clock differences between nodes) and each
+ * read is a short range scan on the existing (…, sent_at, id) indexes.
+ */
+@Service
+public class SyncService {
+
+    public static final String GENERAL = "general";
+
+    private final MessageRepository messageRepository;
+    private final MessageDtoMapper messageDtoMapper;
+    private final int maxMessages;
+    private final Duration clockSkew;
+
+    public SyncService(MessageRepository messageRepository,
+                       MessageDtoMapper messageDtoMapper,
+                       @Value("${chat.sync.max-messages:500}") int maxMessages,
+                       @Value("${chat.sync.clock-skew:5s}") Duration clockSkew) {
+        this.messageRepository = messageRepository;
+        this.messageDtoMapper = messageDtoMapper;
+        this.maxMessages = maxMessages;
+        this.clockSkew = clockSkew;
+    }
+
+    public SyncResponse sync(SyncRequest request) {
+        String userId = request.getUserId();
+        Map<String, Long> lastSeen = request.getLastSeen() != null ? request.getLastSeen() : Map.of();
+        long since = request.getSince() != null ? request.getSince() : 0L;
+        boolean complete = true;
+
+        List<MessageSummary> messages = new ArrayList<>();
+        long generalSeen = lastSeen.getOrDefault(GENERAL, since);
+        List<MessageSummary> general = messageRepository.findGeneralMessagesSince(
+                lowerBound(generalSeen), generalSeen, PageRequest.of(0, maxMessages));
+        messages.addAll(general);
+        complete &= general.size() < maxMessages;
+
+        // One read for all direct conversations from the oldest position the client needs. Rows
+        // the client already has in other conversations are skipped below, so a full page may
+        // hold no new messages at all: the cursor makes the next sync continue after it
+        // instead of scanning the same rows again
+        List<MessageSummary> direct;
+        if (request.getDirectCursor() != null) {
+            MessageCursor cursor = MessageCursor.parse(request.getDirectCursor());
+            direct = messageRepository.findDirectMessagesForUserAfter(
+                    userId, cursor.getSentAt(), cursor.getId(), PageRequest.of(0, maxMessages));
+        } else {
+            long directSeen = since;
+            for (Map.Entry<String, Long> entry : lastSeen.entrySet()) {
+                if (!GENERAL.equals(entry.getKey()) && entry.getValue() != null) {
+                    directSeen = Math.min(directSeen, entry.getValue());
+                }
+            }
+            direct = messageRepository.findDirectMessagesForUserSince(
+                    userId, lowerBound(directSeen), directSeen, PageRequest.of(0, maxMessages));
+        }
+        String directCursor = null;
+        if (direct.size() == maxMessages) {
+            complete = false;
+            MessageSummary last = direct.get(direct.size() - 1);
+            directCursor = new MessageCursor(last.getSentAt(), last.getId()).toString();
+        }
+        for (MessageSummary message : direct) {
+            String conversationId = ConversationKeys.of(message.getSenderId(), message.getRecipientId());
+            if (message.getId() > lastSeen.getOrDefault(conversationId, since)) {
+                messages.add(message);
+            }
+        }
+
+        Map<String, List<MessageDto>> conversations = new LinkedHashMap<>();
+        for (MessageDto dto : messageDtoMapper.toDtos(messages)) {
+            String conversationId = ConversationKeys.of(dto.getSenderId(), dto.getRecipientId());
+            conversations.computeIfAbsent(conversationId != null ? conversationId : GENERAL, key -> new ArrayList<>())
+                    .add(dto);
+        }
+        return new SyncResponse(conversations, complete, directCursor);
+    }
+
+    private LocalDateTime lowerBound(long lastSeenId) {
+        long millis = MessageIdGenerator.timestampOf(lastSeenId) - clockSkew.toMillis();
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,144 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.TypingEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory typing state per (user, conversation). Keystroke events only update the
+ * state; changes are broadcast on a fixed tick, so a user typing continuously produces
+ * one "typing" and one "stopped" event instead of one per keystroke. States without a
+ * fresh event for {@code chat.typing.expiry} are stopped automatically.
+ */
+@Slf4j
+@Service
+public class TypingService {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final UserDirectoryService userDirectoryService;
+    private final long expiryMillis;
+    private final Map<TypingKey, TypingState> states = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    // Payloads only depend on user, name and state, so each is serialised once and reused
+    private final Cache<TypingEvent, Message<byte[]>> payloads;
+
+    private final Counter events;
+    private final Counter broadcasts;
+
+    public TypingService(SimpMessagingTemplate messagingTemplate,
+                         UserDirectoryService userDirectoryService,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         @Value("${chat.typing.expiry:5s}") Duration expiry,
+                         @Value("${chat.typing.payload-cache-size:20000}") long payloadCacheSize) {
+        this.messagingTemplate = messagingTemplate;
+        this.userDirectoryService = userDirectoryService;
+        this.objectMapper = objectMapper;
+        this.payloads = Caffeine.newBuilder().maximumSize(payloadCacheSize).build();
+        this.expiryMillis = expiry.toMillis();
+        this.events = Counter.builder("chat.typing.events").register(meterRegistry);
+        this.broadcasts = Counter.builder("chat.typing.broadcasts").register(meterRegistry);
+        meterRegistry.gaugeMapSize("chat.typing.active", Tags.empty(), states);
+    }
+
+    public void startTyping(String userId, String recipientId) {
+        events.increment();
+        long now = System.currentTimeMillis();
+        states.compute(new TypingKey(userId, recipientId), (key, state) -> {
+            TypingState updated = state != null ? state : new TypingState();
+            updated.typing = true;
+            updated.lastEventAt = now;
+            return updated;
+        });
+    }
+
+    public void stopTyping(String userId, String recipientId) {
+        events.increment();
+        states.computeIfPresent(new TypingKey(userId, recipientId), (key, state) -> {
+            state.typing = false;
+            // Never announced, nothing to retract
+            return state.announced ? state : null;
+        });
+    }
+
+    @Scheduled(fixedRateString = "${chat.typing.tick:250ms}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        Map<TypingKey, Boolean> changes = new HashMap<>();
+        for (TypingKey key : states.keySet()) {
+            states.computeIfPresent(key, (k, state) -> {
+                if (state.typing && now - state.lastEventAt > expiryMillis) {
+                    state.typing = false;
+                }
+                if (state.typing != state.announced) {
+                    changes.put(k, state.typing);
+                    state.announced = state.typing;
+                }
+                return state.typing ? state : null;
+            });
+        }
+        changes.forEach(this::broadcast);
+    }
+
+    private void broadcast(TypingKey key, boolean typing) {
+        try {
+            String userName;
+            try {
+                userName = userDirectoryService.getUserName(key.userId());
+            } catch (Exception e) {
+                userName = "Unknown";
+            }
+            Message<byte[]> payload = payloads.get(new TypingEvent(key.userId(), userName, typing), this::serialize);
+
+            if (key.recipientId() != null) {
+                // Direct message typing - send only to recipient
+                messagingTemplate.send("/user/" + key.recipientId() + "/queue/typing", payload);
+            } else {
+                // General chat typing - send to general topic
+                messagingTemplate.send("/topic/typing", payload);
+            }
+            broadcasts.increment();
+        } catch (Exception e) {
+            log.debug("Failed to broadcast typing state for {}: {}", key.userId(), e.getMessage());
+        }
+    }
+
+    private Message<byte[]> serialize(TypingEvent event) {
+        try {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            headers.setLeaveMutable(false);
+            return MessageBuilder.createMessage(objectMapper.writeValueAsBytes(event), headers.getMessageHeaders());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialise typing event", e);
+        }
+    }
+
+    private record TypingKey(String userId, String recipientId) {
+    }
+
+    private static class TypingState {
+        boolean typing;
+        boolean announced;
+        long lastEventAt;
+    }
+}
@@ -0,0 +1,115 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.entity.mysql.User;
+import com.dataquad.mymulyamessage.repository.mysql.UserRepository;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Read-through cache over the MySQL user directory. Active users are preloaded at
+ * startup and refreshed in the background so chat traffic never waits on MySQL.
+ */
+@Slf4j
+@Service
+public class UserDirectoryService {
+
+    private static final String UNKNOWN_USER = "Unknown";
+
+    private final UserRepository userRepository;
+    private final LoadingCache<String, Optional<User>> users;
+
+    public UserDirectoryService(UserRepository userRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${chat.user-cache.max-size:10000}") long maxSize,
+                                @Value("${chat.user-cache.ttl:30m}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(new UserLoader());
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    public Optional<User> findById(String userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        return users.get(userId);
+    }
+
+    public String getUserName(String userId) {
+        return findById(userId).map(User::getUserName).orElse(UNKNOWN_USER);
+    }
+
+    /**
+     * Resolves names for a batch of users; cache misses are loaded with a single IN query.
+     */
+    public Map<String, String> getUserNames(Collection<String> userIds) {
+        Map<String, String> names = new HashMap<>();
+        users.getAll(userIds.stream().filter(Objects::nonNull).distinct().toList())
+                .forEach((userId, user) -> names.put(userId, user.map(User::getUserName).orElse(UNKNOWN_USER)));
+        return names;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.user-cache.refresh-interval:10m}",
+               initialDelayString = "${chat.user-cache.refresh-interval:10m}")
+    public void refresh() {
+        try {
+            List<User> activeUsers = userRepository.findByStatus("ACTIVE");
+            Map<String, Optional<User>> entries = new HashMap<>();
+            for (User user : activeUsers) {
+                entries.put(user.getUserId(), Optional.of(user));
+            }
+            users.putAll(entries);
+            log.debug("Refreshed user directory cache with {} active users", entries.size());
+        } catch (Exception e) {
+            // Keep serving cached entries if MySQL is unavailable
+            log.warn("User directory refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private class UserLoader implements CacheLoader<String, Optional<User>> {
+
+        @Override
+        public Optional<User> load(String userId) {
+            return userRepository.findById(userId);
+        }
+
+        @Override
+        public Map<String, Optional<User>> loadAll(Set<? extends String> userIds) {
+            Map<String, Optional<User>> loaded = new HashMap<>();
+            List<String> ids = List.copyOf(userIds);
+            for (String userId : ids) {
+                loaded.put(userId, Optional.empty());
+            }
+            for (User user : userRepository.findAllById(ids)) {
+                loaded.put(user.getUserId(), Optional.of(user));
+            }
+            return loaded;
+        }
+    }
+}
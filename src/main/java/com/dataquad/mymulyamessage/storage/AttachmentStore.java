@@ -0,0 +1,18 @@
+package com.dataquad.mymulyamessage.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Content-addressed blob storage for file attachments. Blobs are keyed by the
+ * SHA-256 of their content, so identical uploads are stored once.
+ */
+public interface AttachmentStore {
+
+    StoredAttachment store(InputStream data) throws IOException;
+
+    Optional<Resource> load(String hash);
+}
@@ -0,0 +1,80 @@
+package com.dataquad.mymulyamessage.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Stores blobs on the local filesystem as {@code <root>/ab/cd/abcd...}.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.attachments.store", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemAttachmentStore implements AttachmentStore {
+
+    private final Path root;
+    private final Path tempDir;
+
+    public FileSystemAttachmentStore(@Value("${chat.attachments.root:attachments}") Path root) throws IOException {
+        this.root = root.toAbsolutePath();
+        this.tempDir = Files.createDirectories(this.root.resolve("tmp"));
+    }
+
+    @Override
+    public StoredAttachment store(InputStream data) throws IOException {
+        // Hash while spooling to a temp file, then move into place under the content hash
+        Path tempFile = Files.createTempFile(tempDir, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+                size = data.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = pathFor(hash);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // Same content stored concurrently by another upload
+                }
+            }
+            return new StoredAttachment(hash, size);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public Optional<Resource> load(String hash) {
+        Path path = pathFor(hash);
+        return Files.isRegularFile(path) ? Optional.of(new FileSystemResource(path)) : Optional.empty();
+    }
+
+    private Path pathFor(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
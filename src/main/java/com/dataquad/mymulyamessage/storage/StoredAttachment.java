@@ -0,0 +1,9 @@
+package com.dataquad.mymulyamessage.storage;
+
+import lombok.Value;
+
+@Value
+public class StoredAttachment {
+    String hash;
+    long size;
+}
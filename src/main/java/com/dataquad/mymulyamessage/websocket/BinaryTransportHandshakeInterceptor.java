@@ -0,0 +1,28 @@
+package com.dataquad.mymulyamessage.websocket;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Marks sessions on the raw WebSocket endpoint, which (unlike SockJS) can carry binary frames.
+ */
+public class BinaryTransportHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String BINARY_CAPABLE_ATTRIBUTE = "chat.binaryCapable";
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        attributes.put(BINARY_CAPABLE_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
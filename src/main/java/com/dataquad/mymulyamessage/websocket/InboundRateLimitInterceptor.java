@@ -0,0 +1,162 @@
+package com.dataquad.mymulyamessage.websocket;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.dataquad.mymulyamessage.dto.RateLimitNotice;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token-bucket rate limits on client SEND frames, per destination group and per client.
+ *
+ * <p>Chat messages ({@code chat.rate-limit.messages.*}) and typing updates
+ * ({@code chat.rate-limit.typing.*}) each have a rate and burst. Every session has its own
+ * bucket; sessions that gave a {@code userId} on CONNECT must also get a token from that
+ * user's bucket, shared by all of the user's sessions. The {@code userId} isn't authenticated,
+ * so the session bucket is what bounds a client that changes or borrows ids. Frames over the
+ * limit are dropped here, on the WebSocket thread, before they reach the inbound executor, and
+ * counted in {@code chat.inbound.rejected}. For dropped chat messages the user also gets a
+ * {@link RateLimitNotice} on {@code /user/{userId}/queue/errors}, at most one per second and
+ * session. Idle buckets are evicted once they would have refilled.
+ */
+@Slf4j
+@Component
+public class InboundRateLimitInterceptor implements ChannelInterceptor {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final boolean enabled;
+    private final List<Limit> limits;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    // Lazy: this interceptor is needed while the broker config that creates the template is built
+    public InboundRateLimitInterceptor(@Lazy SimpMessagingTemplate messagingTemplate,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${chat.rate-limit.enabled:true}") boolean enabled,
+                                       @Value("${chat.rate-limit.messages.destinations:/app/chat.sendMessage}")
+                                       List<String> messageDestinations,
+                                       @Value("${chat.rate-limit.messages.rate:5}") double messageRate,
+                                       @Value("${chat.rate-limit.messages.burst:20}") int messageBurst,
+                                       @Value("${chat.rate-limit.typing.destinations:/app/chat.typing,/app/chat.stopTyping}")
+                                       List<String> typingDestinations,
+                                       @Value("${chat.rate-limit.typing.rate:2}") double typingRate,
+                                       @Value("${chat.rate-limit.typing.burst:6}") int typingBurst) {
+        this.messagingTemplate = messagingTemplate;
+        this.enabled = enabled;
+        this.limits = List.of(
+                new Limit("messages", messageDestinations, messageRate, messageBurst, true, meterRegistry),
+                new Limit("typing", typingDestinations, typingRate, typingBurst, false, meterRegistry));
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        Limit limit = limitFor(destination);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (limit == null || sessionId == null) {
+            return message;
+        }
+        String userId = userId(message);
+        long now = System.nanoTime();
+        if (limit.acquire("session:" + sessionId, now) && (userId == null || limit.acquire("user:" + userId, now))) {
+            return message;
+        }
+        limit.rejected.increment();
+        log.debug("Rate limit {} exceeded by session {} (user {}), dropped frame to {}",
+                limit.name, sessionId, userId, destination);
+        if (limit.notify && userId != null && limit.acquireNotice(sessionId, now)) {
+            notifyRejected(userId, limit, destination);
+        }
+        return null;
+    }
+
+    private void notifyRejected(String userId, Limit limit, String destination) {
+        try {
+            messagingTemplate.convertAndSend("/user/" + userId + "/queue/errors", new RateLimitNotice(limit.name, destination));
+        } catch (Exception e) {
+            log.warn("Failed to send rate limit notice to {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private Limit limitFor(String destination) {
+        if (destination == null) {
+            return null;
+        }
+        for (Limit limit : limits) {
+            for (String pattern : limit.destinations) {
+                if (pathMatcher.match(pattern, destination)) {
+                    return limit;
+                }
+            }
+        }
+        return null;
+    }
+
+    private String userId(Message<?> message) {
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+        Object userId = attributes != null ? attributes.get(PresenceChannelInterceptor.USER_ID_ATTRIBUTE) : null;
+        return userId != null ? userId.toString() : null;
+    }
+
+    private static final class Limit {
+
+        private final String name;
+        private final List<String> destinations;
+        private final double rate;
+        private final int burst;
+        private final boolean notify;
+        private final Cache<String, TokenBucket> buckets;
+        // Per session, one notice per second
+        private final Cache<String, TokenBucket> notices;
+        private final Counter rejected;
+
+        Limit(String name, List<String> destinations, double rate, int burst, boolean notify,
+              MeterRegistry meterRegistry) {
+            if (rate <= 0 || burst < 1) {
+                throw new IllegalArgumentException("chat.rate-limit." + name + " needs rate > 0 and burst >= 1");
+            }
+            this.name = name;
+            this.destinations = destinations;
+            this.rate = rate;
+            this.burst = burst;
+            this.notify = notify;
+            // An idle bucket is full again after burst / rate, so it can be recreated instead
+            long refillMillis = (long) Math.ceil(burst * 1000 / rate);
+            this.buckets = Caffeine.newBuilder()
+                    .expireAfterAccess(Duration.ofMillis(Math.max(refillMillis, 1000)))
+                    .build();
+            this.notices = Caffeine.newBuilder()
+                    .expireAfterAccess(Duration.ofSeconds(1))
+                    .build();
+            this.rejected = Counter.builder("chat.inbound.rejected")
+                    .description("Client frames dropped by rate limits")
+                    .tag("limit", name)
+                    .register(meterRegistry);
+        }
+
+        boolean acquire(String client, long now) {
+            return buckets.get(client, key -> new TokenBucket(rate, burst, now)).tryAcquire(now);
+        }
+
+        boolean acquireNotice(String sessionId, long now) {
+            return notices.get(sessionId, key -> new TokenBucket(1, 1, now)).tryAcquire(now);
+        }
+    }
+}
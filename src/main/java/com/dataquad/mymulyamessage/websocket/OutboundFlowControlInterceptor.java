@@ -0,0 +1,250 @@
+package com.dataquad.mymulyamessage.websocket;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps frames for each session in publish order on the client outbound channel and tracks
+ * the per-session and per-destination backlog.
+ *
+ * <p>MESSAGE frames are queued per session and handed to the outbound executor one at a time,
+ * the next one once the previous has been written. This replaces the broker's
+ * {@code preservePublishOrder}, whose per-session queues are invisible to channel
+ * interceptors. A frame for a session with nothing queued or being written goes straight
+ * through; a queued frame is sent later from the queue, so its original {@code send} returns
+ * {@code false}. Other frames (CONNECT_ACK, DISCONNECT_ACK, heartbeats) are never queued.
+ * Records queue depth and delivery latency (queued until written to the session) per
+ * destination. With {@code chat.websocket.slow-consumer.policy=drop}, ephemeral frames
+ * (typing, presence) are dropped for sessions that already have more than
+ * {@code max-pending} frames queued. Chat messages are never dropped here; sessions that
+ * stay too slow are closed by the transport send-time and buffer limits.
+ *
+ * <p>{@link SessionDisconnectEvent} is published before the broker has seen the DISCONNECT, so
+ * frames can still arrive for an ended session; they are dropped without creating a queue.
+ */
+@Slf4j
+@Component
+public class OutboundFlowControlInterceptor implements ExecutorChannelInterceptor {
+
+    private static final String QUEUED_AT_HEADER = "chatOutboundQueuedAt";
+    // Set on frames sent from a session queue by sendNext, which then sends the next one itself
+    private static final String RELEASED_HEADER = "chatOutboundReleased";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean dropPolicy;
+    private final int maxPending;
+    private final List<String> droppableDestinations;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private final Map<String, SessionQueue> queuesBySession = new ConcurrentHashMap<>();
+    // Sessions that ended recently; late frames for them must not re-create a queue
+    private final Cache<String, Boolean> endedSessions = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
+    private final Map<String, AtomicInteger> pendingByDestination = new ConcurrentHashMap<>();
+    private final Map<String, Timer> deliveryTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> frameCounters = new ConcurrentHashMap<>();
+    private final Counter dropped;
+
+    public OutboundFlowControlInterceptor(MeterRegistry meterRegistry,
+                                          @Value("${chat.websocket.slow-consumer.policy:disconnect}") String policy,
+                                          @Value("${chat.websocket.slow-consumer.max-pending:100}") int maxPending,
+                                          @Value("${chat.websocket.slow-consumer.droppable-destinations:/topic/typing,/user/*/queue/typing}")
+                                          List<String> droppableDestinations) {
+        this.meterRegistry = meterRegistry;
+        this.dropPolicy = "drop".equals(policy);
+        this.maxPending = maxPending;
+        this.droppableDestinations = droppableDestinations;
+        this.dropped = Counter.builder("chat.outbound.dropped")
+                .description("Frames dropped for slow consumers")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || message.getHeaders().containsKey(QUEUED_AT_HEADER)
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            // Not session bound, already accounted for, or a control frame
+            return message;
+        }
+        if (endedSessions.getIfPresent(sessionId) != null) {
+            return null;
+        }
+        String rawDestination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        SessionQueue queue = queuesBySession.computeIfAbsent(sessionId, id -> new SessionQueue());
+        if (dropPolicy && queue.size.get() >= maxPending && isDroppable(rawDestination)) {
+            dropped.increment();
+            return null;
+        }
+        String destination = metricDestination(rawDestination);
+        pendingFor(destination).incrementAndGet();
+        // Fan-out: one frame per subscriber session
+        frameCounters.computeIfAbsent(destination, d -> Counter.builder("chat.outbound.frames")
+                        .tag("destination", d)
+                        .register(meterRegistry))
+                .increment();
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setHeader(QUEUED_AT_HEADER, System.nanoTime());
+        queue.size.incrementAndGet();
+        if (queue.messages.isEmpty() && queue.inFlight.compareAndSet(false, true)) {
+            // Nothing ahead of it
+            return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+        }
+        accessor.setHeader(RELEASED_HEADER, Boolean.TRUE);
+        queue.messages.add(MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders()));
+        sendNext(queue, channel);
+        // Sent from the queue instead
+        return null;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (sent || !message.getHeaders().containsKey(QUEUED_AT_HEADER)) {
+            return;
+        }
+        // Rejected by the executor or a later interceptor, so afterMessageHandled won't run
+        SessionQueue queue = queuesBySession.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (queue == null) {
+            pendingFor(metricDestination(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))).decrementAndGet();
+            return;
+        }
+        finished(queue, message);
+        queue.inFlight.set(false);
+        if (!message.getHeaders().containsKey(RELEASED_HEADER)) {
+            sendNext(queue, channel);
+        }
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        Long queuedAt = message.getHeaders().get(QUEUED_AT_HEADER, Long.class);
+        if (queuedAt == null) {
+            return;
+        }
+        String destination = metricDestination(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        deliveryTimers.computeIfAbsent(destination, d -> Timer.builder("chat.outbound.delivery")
+                        .description("Time from queuing a frame for a session until it is written")
+                        .tag("destination", d)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        SessionQueue queue = queuesBySession.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (queue != null) {
+            finished(queue, message);
+            queue.inFlight.set(false);
+            sendNext(queue, channel);
+        } else {
+            pendingFor(destination).decrementAndGet();
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        endedSessions.put(event.getSessionId(), Boolean.TRUE);
+        SessionQueue queue = queuesBySession.remove(event.getSessionId());
+        if (queue != null) {
+            for (Message<?> message = queue.messages.poll(); message != null; message = queue.messages.poll()) {
+                finished(queue, message);
+            }
+        }
+    }
+
+    /**
+     * Hands the next queued frame of a session to the executor, unless one is still being written.
+     * A frame that isn't accepted is accounted for in {@link #afterSendCompletion}.
+     */
+    private void sendNext(SessionQueue queue, MessageChannel channel) {
+        while (!queue.messages.isEmpty() && queue.inFlight.compareAndSet(false, true)) {
+            Message<?> next = queue.messages.poll();
+            if (next == null) {
+                // Taken by a concurrent caller; check again, another frame may have been queued meanwhile
+                queue.inFlight.set(false);
+                continue;
+            }
+            try {
+                if (channel.send(next)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // e.g. the outbound executor queue is full
+                log.warn("Failed to send frame to session {}: {}",
+                        SimpMessageHeaderAccessor.getSessionId(next.getHeaders()), e.getMessage());
+            }
+        }
+    }
+
+    private void finished(SessionQueue queue, Message<?> message) {
+        queue.size.decrementAndGet();
+        pendingFor(metricDestination(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))).decrementAndGet();
+    }
+
+    private AtomicInteger pendingFor(String destination) {
+        return pendingByDestination.computeIfAbsent(destination, d -> meterRegistry.gauge(
+                "chat.outbound.queue.depth", Tags.of("destination", d), new AtomicInteger()));
+    }
+
+    private boolean isDroppable(String destination) {
+        if (destination == null) {
+            return false;
+        }
+        for (String pattern : droppableDestinations) {
+            if (pathMatcher.match(pattern, destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collapses per-user destinations so metrics have one series per logical destination.
+     */
+    private String metricDestination(String destination) {
+        if (destination == null) {
+            return "none";
+        }
+        if (destination.startsWith("/user/")) {
+            int next = destination.indexOf('/', "/user/".length());
+            return next > 0 ? "/user/*" + destination.substring(next) : "/user/*";
+        }
+        return destination;
+    }
+
+    /**
+     * Frames waiting for one session; {@code size} includes the frame being written.
+     */
+    private static final class SessionQueue {
+
+        private final Queue<Message<?>> messages = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+    }
+}
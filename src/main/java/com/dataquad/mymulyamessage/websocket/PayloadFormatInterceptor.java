@@ -0,0 +1,124 @@
+package com.dataquad.mymulyamessage.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.converter.ContentTypeResolver;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session payload format for frames sent to clients.
+ *
+ * <p>JSON stays the default. A client on the raw WebSocket endpoint ({@code /ws-native}) can
+ * send {@code payload-format:cbor} on CONNECT to receive CBOR instead; such frames carry
+ * {@code payload-format:cbor} and {@code content-type:application/octet-stream}, which makes
+ * STOMP send them as binary WebSocket messages. SockJS sessions are text-only and keep JSON.
+ * Transcoding runs on the outbound channel threads, once per payload: broadcasts share one
+ * payload array across all subscribers, so the CBOR form is cached by payload identity.
+ * Client-to-server frames are always JSON.
+ */
+@Slf4j
+@Component
+public class PayloadFormatInterceptor implements ExecutorChannelInterceptor {
+
+    public static final String FORMAT_HEADER = "payload-format";
+    public static final String CBOR = "cbor";
+
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final ContentTypeResolver contentTypeResolver = new DefaultContentTypeResolver();
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+    // Weak keys compare by identity and drop entries once the broker releases the payload
+    private final Cache<byte[], byte[]> cborPayloads = Caffeine.newBuilder().weakKeys().build();
+    private final DistributionSummary jsonBytes;
+    private final DistributionSummary cborBytes;
+
+    public PayloadFormatInterceptor(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.jsonBytes = DistributionSummary.builder("chat.outbound.payload.bytes")
+                .tag("format", "json")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.cborBytes = DistributionSummary.builder("chat.outbound.payload.bytes")
+                .tag("format", CBOR)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.CONNECT) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            if (CBOR.equalsIgnoreCase(accessor.getFirstNativeHeader(FORMAT_HEADER)) && attributes != null
+                    && Boolean.TRUE.equals(attributes.get(BinaryTransportHandshakeInterceptor.BINARY_CAPABLE_ATTRIBUTE))) {
+                cborSessions.add(accessor.getSessionId());
+            }
+        }
+        return message;
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        // Only frames delivered to a subscription; inbound SEND frames have no subscription id
+        if (SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()) == null
+                || !(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+        MimeType contentType = contentTypeResolver.resolve(message.getHeaders());
+        if (contentType == null || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return message;
+        }
+        if (!cborSessions.contains(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+            jsonBytes.record(json.length);
+            return message;
+        }
+        try {
+            byte[] cbor = cborPayloads.get(json, this::toCbor);
+            cborBytes.record(cbor.length);
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setNativeHeader(FORMAT_HEADER, CBOR);
+            return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+        } catch (UncheckedIOException e) {
+            log.debug("Sending JSON, CBOR encoding failed: {}", e.getMessage());
+            return message;
+        }
+    }
+
+    private byte[] toCbor(byte[] json) {
+        try {
+            return cborMapper.writeValueAsBytes(objectMapper.readTree(json));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        cborSessions.remove(event.getSessionId());
+    }
+}
@@ -0,0 +1,63 @@
+package com.dataquad.mymulyamessage.websocket;
+
+import com.dataquad.mymulyamessage.service.PresenceService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Map;
+
+/**
+ * Feeds STOMP session lifecycle into {@link PresenceService}.
+ *
+ * <p>CONNECT contract: clients send a {@code userId} native header with the ID they logged in
+ * with; it is kept in the session attributes and the user is online while the session lasts.
+ * Like the {@code userId} of the REST API it is not authenticated (the app has no
+ * authentication), so it identifies rather than proves the user. Sessions without the
+ * header get no presence and are rate-limited per session only. Every later inbound frame,
+ * heartbeats included, counts as activity. Sessions end on DISCONNECT or when the connection
+ * closes or misses heartbeats.
+ */
+@Component
+@RequiredArgsConstructor
+public class PresenceChannelInterceptor implements ChannelInterceptor {
+
+    public static final String USER_ID_HEADER = "userId";
+    public static final String USER_ID_ATTRIBUTE = "chat.userId";
+
+    private final PresenceService presenceService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null) {
+            return message;
+        }
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.CONNECT) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+            String userId = accessor.getFirstNativeHeader(USER_ID_HEADER);
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            if (userId != null && !userId.isBlank()) {
+                if (attributes != null) {
+                    attributes.put(USER_ID_ATTRIBUTE, userId);
+                }
+                presenceService.connected(userId, sessionId);
+            }
+        } else {
+            presenceService.sessionActivity(sessionId);
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        presenceService.disconnected(event.getSessionId());
+    }
+}
@@ -0,0 +1,38 @@
+package com.dataquad.mymulyamessage.websocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, kept as a single timestamp (generic cell rate algorithm): the
+ * bucket state is the time at which it would be full again, advanced by one interval per
+ * token taken. A CAS on that value replaces locking.
+ */
+final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param ratePerSecond tokens added per second
+     * @param burst         bucket capacity, i.e. the number of tokens that can be taken at once
+     */
+    TokenBucket(double ratePerSecond, int burst, long now) {
+        this.intervalNanos = Math.max(1L, (long) (1_000_000_000L / ratePerSecond));
+        this.capacityNanos = intervalNanos * burst;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    boolean tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+}
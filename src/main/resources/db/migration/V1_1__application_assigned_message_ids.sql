@@ -0,0 +1,16 @@
+-- Message IDs are 64-bit snowflake IDs assigned by the application (MessageIdGenerator).
+-- Databases created by hbm2ddl have id GENERATED BY DEFAULT AS IDENTITY (the first Message
+-- entity used IDENTITY generation); those created from the first database-init.sql have id
+-- SERIAL, an int4 that can't hold them. Either way the column must not generate values.
+ALTER TABLE messages ALTER COLUMN id TYPE BIGINT;
+
+DO $$
+BEGIN
+    IF (SELECT attidentity FROM pg_attribute
+        WHERE attrelid = 'messages'::regclass AND attname = 'id') <> '' THEN
+        ALTER TABLE messages ALTER COLUMN id DROP IDENTITY IF EXISTS;
+    ELSE
+        ALTER TABLE messages ALTER COLUMN id DROP DEFAULT;
+        DROP SEQUENCE IF EXISTS messages_id_seq;
+    END IF;
+END $$;
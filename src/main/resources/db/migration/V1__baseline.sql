@@ -0,0 +1,59 @@
+-- Baseline schema. Written to be idempotent so it also brings databases previously
+-- managed by hibernate.hbm2ddl.auto=update up to date (spring.flyway.baseline-version=0).
+
+-- User sessions table
+CREATE TABLE IF NOT EXISTS user_sessions (
+    id SERIAL PRIMARY KEY,
+    user_id VARCHAR(50),
+    is_online BOOLEAN DEFAULT FALSE,
+    last_activity TIMESTAMP
+);
+
+-- Messages table. IDs are assigned by the application (MessageIdGenerator)
+CREATE TABLE IF NOT EXISTS messages (
+    id BIGINT PRIMARY KEY,
+    sender_id VARCHAR(50),
+    recipient_id VARCHAR(50),
+    conversation_id VARCHAR(101),
+    content TEXT,
+    file_name VARCHAR(255),
+    file_type VARCHAR(100),
+    file_size BIGINT,
+    file_hash VARCHAR(64),
+    file_data BYTEA,
+    message_type VARCHAR(20) DEFAULT 'TEXT',
+    sent_at TIMESTAMP
+);
+
+-- Columns added after the first releases (the id column is converted in V1_1)
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS conversation_id VARCHAR(101);
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS file_hash VARCHAR(64);
+
+-- History is paged by (sent_at, id) keysets
+CREATE INDEX IF NOT EXISTS idx_messages_recipient_sent_at ON messages (recipient_id, sent_at, id);
+-- Direct messages are read by their canonical conversation key (ordered user pair)
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_sent_at ON messages (conversation_id, sent_at, id);
+-- Delta sync reads a user's sent direct messages since a position
+CREATE INDEX IF NOT EXISTS idx_messages_sender_sent_at ON messages (sender_id, sent_at, id);
+
+-- Full-text search over content and file name, maintained by PostgreSQL on insert/update.
+-- The 'simple' configuration doesn't stem or drop stop words, which suits mixed-language chat
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('simple', coalesce(content, '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce(file_name, '')), 'B')
+    ) STORED;
+CREATE INDEX IF NOT EXISTS idx_messages_search ON messages USING GIN (search_vector);
+
+-- Legacy file payloads (new uploads go to the attachment store, keyed by file_hash).
+-- Stored uncompressed out of line so ranged reads only fetch the chunks they need
+ALTER TABLE messages ALTER COLUMN file_data SET STORAGE EXTERNAL;
+
+-- Attachments, one row per distinct content. Uploads upsert on sha256 and messages
+-- reference the content through messages.file_hash
+CREATE TABLE IF NOT EXISTS attachments (
+    id BIGSERIAL PRIMARY KEY,
+    sha256 VARCHAR(64) NOT NULL UNIQUE,
+    size BIGINT NOT NULL,
+    created_at TIMESTAMP
+);
@@ -0,0 +1,70 @@
+-- Range-partitions messages by month of sent_at (partitions messages_pYYYY_MM).
+-- Old months can then be archived and dropped as a whole (PartitionMaintenanceJob)
+-- instead of deleting rows, and history queries bounded by sent_at only touch the
+-- partitions they need.
+--
+-- Rows are copied in one transaction; on large installations run this during a
+-- maintenance window.
+
+ALTER TABLE messages RENAME TO messages_unpartitioned;
+ALTER INDEX IF EXISTS idx_messages_recipient_sent_at RENAME TO idx_messages_unpartitioned_recipient;
+ALTER INDEX IF EXISTS idx_messages_conversation_sent_at RENAME TO idx_messages_unpartitioned_conversation;
+ALTER INDEX IF EXISTS idx_messages_sender_sent_at RENAME TO idx_messages_unpartitioned_sender;
+ALTER INDEX IF EXISTS idx_messages_search RENAME TO idx_messages_unpartitioned_search;
+
+-- The partition key must be part of the primary key; IDs stay unique by construction
+CREATE TABLE messages (
+    id BIGINT NOT NULL,
+    sender_id VARCHAR(50),
+    recipient_id VARCHAR(50),
+    conversation_id VARCHAR(101),
+    content TEXT,
+    file_name VARCHAR(255),
+    file_type VARCHAR(100),
+    file_size BIGINT,
+    file_hash VARCHAR(64),
+    file_data BYTEA,
+    message_type VARCHAR(20) DEFAULT 'TEXT',
+    sent_at TIMESTAMP NOT NULL,
+    search_vector tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('simple', coalesce(content, '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce(file_name, '')), 'B')
+    ) STORED,
+    PRIMARY KEY (id, sent_at)
+) PARTITION BY RANGE (sent_at);
+
+ALTER TABLE messages ALTER COLUMN file_data SET STORAGE EXTERNAL;
+
+-- Created on the parent, so every partition gets them
+CREATE INDEX idx_messages_recipient_sent_at ON messages (recipient_id, sent_at, id);
+CREATE INDEX idx_messages_conversation_sent_at ON messages (conversation_id, sent_at, id);
+CREATE INDEX idx_messages_sender_sent_at ON messages (sender_id, sent_at, id);
+CREATE INDEX idx_messages_search ON messages USING GIN (search_vector);
+
+-- One partition per month from the oldest message until two months ahead. There is no
+-- default partition: it would prevent DETACH PARTITION CONCURRENTLY, which retention uses.
+-- PartitionMaintenanceJob keeps creating partitions ahead of time.
+DO $$
+DECLARE
+    month_start DATE := date_trunc('month', coalesce((SELECT min(sent_at) FROM messages_unpartitioned), now()));
+    last_month DATE := date_trunc('month', greatest((SELECT max(sent_at) FROM messages_unpartitioned),
+                                                    now() + INTERVAL '2 months'));
+BEGIN
+    WHILE month_start <= last_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF messages FOR VALUES FROM (%L) TO (%L)',
+                       'messages_p' || to_char(month_start, 'YYYY_MM'),
+                       month_start, month_start + INTERVAL '1 month');
+        month_start := month_start + INTERVAL '1 month';
+    END LOOP;
+END $$;
+
+-- Rows without sent_at (written before it was always set) go into the oldest month, so
+-- they are archived with it
+INSERT INTO messages (id, sender_id, recipient_id, conversation_id, content, file_name, file_type,
+                      file_size, file_hash, file_data, message_type, sent_at)
+SELECT id, sender_id, recipient_id, conversation_id, content, file_name, file_type,
+       file_size, file_hash, file_data, message_type,
+       coalesce(sent_at, (SELECT min(sent_at) FROM messages_unpartitioned), now())
+FROM messages_unpartitioned;
+
+DROP TABLE messages_unpartitioned;
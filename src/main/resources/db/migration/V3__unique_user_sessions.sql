@@ -0,0 +1,9 @@
+-- One presence row per user, so activity can be written with a single upsert
+-- (UserSessionJdbcRepository). Earlier versions could insert duplicates when two
+-- flushes raced; keep the most recent row of each user.
+DELETE FROM user_sessions s
+USING user_sessions d
+WHERE s.user_id = d.user_id
+  AND (coalesce(s.last_activity, '-infinity'), s.id) < (coalesce(d.last_activity, '-infinity'), d.id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_user_sessions_user_id ON user_sessions (user_id);
@@ -0,0 +1,49 @@
+package com.dataquad.mymulyamessage.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class MessageCursorTest {
+
+    @Test
+    void roundTrips() {
+        MessageCursor cursor = new MessageCursor(LocalDateTime.of(2025, 1, 31, 9, 15, 0, 123_456_000), 4821L);
+
+        assertThat(cursor.toString()).isEqualTo("2025-01-31T09:15:00.123456,4821");
+        assertThat(MessageCursor.parse(cursor.toString())).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsWholeMinutes() {
+        // LocalDateTime.toString drops zero seconds
+        MessageCursor cursor = new MessageCursor(LocalDateTime.of(2025, 1, 31, 9, 15), 7L);
+
+        assertThat(cursor.toString()).isEqualTo("2025-01-31T09:15,7");
+        assertThat(MessageCursor.parse(cursor.toString())).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsSnowflakeIds() {
+        MessageCursor cursor = new MessageCursor(LocalDateTime.of(2026, 10, 18, 12, 0, 1), Long.MAX_VALUE);
+
+        assertThat(MessageCursor.parse(cursor.toString())).isEqualTo(cursor);
+    }
+
+    @Test
+    void toleratesWhitespace() {
+        assertThat(MessageCursor.parse(" 2025-01-31T09:15:00 , 42 "))
+                .isEqualTo(new MessageCursor(LocalDateTime.of(2025, 1, 31, 9, 15), 42L));
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatIllegalArgumentException().isThrownBy(() -> MessageCursor.parse("4821"));
+        assertThatIllegalArgumentException().isThrownBy(() -> MessageCursor.parse("yesterday,4821"));
+        assertThatIllegalArgumentException().isThrownBy(() -> MessageCursor.parse("2025-01-31T09:15:00,abc"));
+        assertThatIllegalArgumentException().isThrownBy(() -> MessageCursor.parse(","));
+    }
+}
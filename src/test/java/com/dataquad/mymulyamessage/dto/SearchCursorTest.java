@@ -0,0 +1,26 @@
+package com.dataquad.mymulyamessage.dto;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class SearchCursorTest {
+
+    @Test
+    void roundTripsRankExactly() {
+        // The next page continues after (rank, id), so the float must survive unchanged
+        for (float rank : new float[] {0.0607927f, 1e-20f, 0.1f, 1f / 3}) {
+            SearchCursor cursor = new SearchCursor(rank, 4821L);
+
+            assertThat(SearchCursor.parse(cursor.toString())).isEqualTo(cursor);
+        }
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatIllegalArgumentException().isThrownBy(() -> SearchCursor.parse("0.5"));
+        assertThatIllegalArgumentException().isThrownBy(() -> SearchCursor.parse("high,4821"));
+        assertThatIllegalArgumentException().isThrownBy(() -> SearchCursor.parse("0.5,abc"));
+    }
+}
@@ -0,0 +1,120 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.entity.postgresql.Message;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageExportRepository;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageExportRepository.ExportFilter;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageExportRepository.Scope;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageExportServiceTest {
+
+    private static final ExportFilter FILTER = new ExportFilter(Scope.ALL, null, null, null);
+
+    private final MessageExportRepository repository = mock(MessageExportRepository.class);
+    private final UserDirectoryService userDirectoryService = mock(UserDirectoryService.class);
+    private final MessageExportService service = new MessageExportService(repository, userDirectoryService,
+            new MessageDtoMapper(userDirectoryService), new ObjectMapper().registerModule(new JavaTimeModule()), 100);
+
+    @Test
+    void quotesSeparatorsQuotesAndLineBreaks() throws IOException {
+        String csv = exportCsv(message(1L, "a, \"quoted\"\r\nline"));
+
+        assertThat(csv).isEqualTo(header()
+                + "1,2025-01-31T09:15:00,alice,Alice,bob,TEXT,\"a, \"\"quoted\"\"\r\nline\",,,\r\n");
+    }
+
+    @Test
+    void neutralisesFormulas() throws IOException {
+        String csv = exportCsv(
+                message(1L, "=HYPERLINK(\"http://x\")"),
+                message(2L, "+1"),
+                message(3L, "-2"),
+                message(4L, "@SUM(A1)"),
+                message(5L, "\tcmd"));
+
+        assertThat(csv.lines().skip(1).map(MessageExportServiceTest::contentField))
+                .containsExactly("\"'=HYPERLINK(\"\"http://x\"\")\"", "'+1", "'-2", "'@SUM(A1)", "'\tcmd");
+    }
+
+    @Test
+    void leavesNegativeNumbersAndPlainTextAlone() throws IOException {
+        Message negative = message(1L, "hello");
+        negative.setFileSize(-1L);
+
+        String csv = exportCsv(negative);
+
+        assertThat(csv).endsWith(",TEXT,hello,,,-1\r\n");
+    }
+
+    @Test
+    void gzipsNdjson() throws IOException {
+        stream(message(1L, "hi"), message(2L, "there"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = service.export(FILTER, MessageExportService.Format.NDJSON, true, out);
+
+        String ndjson = new String(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes(),
+                StandardCharsets.UTF_8);
+        assertThat(count).isEqualTo(2);
+        assertThat(ndjson.split("\n")).hasSize(2).allSatisfy(line -> assertThat(line).startsWith("{\"id\":"));
+    }
+
+    private String exportCsv(Message... messages) throws IOException {
+        stream(messages);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export(FILTER, MessageExportService.Format.CSV, false, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stream(Message... messages) {
+        when(userDirectoryService.getUserNames(anyCollection())).thenReturn(Map.of("alice", "Alice"));
+        when(repository.findSenderIds(any())).thenReturn(List.of("alice"));
+        doAnswer(invocation -> {
+            Consumer<Message> consumer = invocation.getArgument(2);
+            for (Message message : messages) {
+                consumer.accept(message);
+            }
+            return null;
+        }).when(repository).stream(any(), anyInt(), any(Consumer.class));
+    }
+
+    // Rows without attachment: the content is followed by three empty fields
+    private static String contentField(String row) {
+        return row.substring(row.indexOf(",TEXT,") + 6, row.length() - 3);
+    }
+
+    private static String header() {
+        return "id,sentAt,senderId,senderName,recipientId,messageType,content,fileName,fileType,fileSize\r\n";
+    }
+
+    private static Message message(long id, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSenderId("alice");
+        message.setRecipientId("bob");
+        message.setContent(content);
+        message.setSentAt(LocalDateTime.of(2025, 1, 31, 9, 15));
+        return message;
+    }
+}
@@ -0,0 +1,77 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.MessageRejectedNotice;
+import com.dataquad.mymulyamessage.entity.postgresql.Message;
+import com.dataquad.mymulyamessage.repository.postgresql.MessageJdbcRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class MessagePersistenceServiceTest {
+
+    private final MessageJdbcRepository repository = mock(MessageJdbcRepository.class);
+    private final MessageHistoryCache historyCache = mock(MessageHistoryCache.class);
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private MessagePersistenceService service;
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        service.shutdown();
+    }
+
+    @Test
+    void notifiesSenderWhenAfterFlushMessageFailsToPersist() throws InterruptedException {
+        service = writeBehind("after-flush");
+        doThrow(new DataIntegrityViolationException("batch")).when(repository).insertAll(anyList());
+        doThrow(new DataIntegrityViolationException("row")).when(repository).insert(any());
+        AtomicBoolean published = new AtomicBoolean();
+
+        service.persist(message(42L, "alice"), () -> published.set(true));
+
+        verify(messagingTemplate, timeout(5000)).convertAndSend("/user/alice/queue/errors",
+                new MessageRejectedNotice("persist-failed", null, 42L));
+        service.shutdown();
+        assertThat(published).isFalse();
+    }
+
+    @Test
+    void evictsPublishedMessageThatFailsToPersist() {
+        service = writeBehind("after-broadcast");
+        doThrow(new DataIntegrityViolationException("batch")).when(repository).insertAll(anyList());
+        doThrow(new DataIntegrityViolationException("row")).when(repository).insert(any());
+
+        service.persist(message(7L, "bob"), () -> { });
+
+        verify(messagingTemplate, timeout(5000)).convertAndSend("/user/bob/queue/errors",
+                new MessageRejectedNotice("persist-failed", null, 7L));
+        verify(historyCache).evict("alice_bob");
+    }
+
+    private MessagePersistenceService writeBehind(String ack) {
+        return new MessagePersistenceService(repository, historyCache, messagingTemplate, new SimpleMeterRegistry(),
+                "write-behind", ack, 10, 10, Duration.ofMillis(10), Duration.ofMillis(10));
+    }
+
+    private static Message message(long id, String senderId) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSenderId(senderId);
+        message.setRecipientId("alice".equals(senderId) ? "bob" : "alice");
+        message.setConversationId("alice_bob");
+        message.setContent("hi");
+        return message;
+    }
+}
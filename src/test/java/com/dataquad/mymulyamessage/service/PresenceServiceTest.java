@@ -0,0 +1,84 @@
+package com.dataquad.mymulyamessage.service;
+
+import com.dataquad.mymulyamessage.dto.PresenceEvent;
+import com.dataquad.mymulyamessage.repository.postgresql.UserSessionJdbcRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PresenceServiceTest {
+
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final UserSessionJdbcRepository repository = mock(UserSessionJdbcRepository.class);
+
+    @Test
+    void loginKeepsUserOnlineWithoutSession() {
+        PresenceService presence = presence("simple", Duration.ofMinutes(30));
+
+        presence.loggedIn("u1");
+
+        assertThat(presence.getOnlineUsers()).containsExactly("u1");
+        verify(messagingTemplate).convertAndSend(PresenceService.PRESENCE_TOPIC, new PresenceEvent("u1", true));
+    }
+
+    @Test
+    void expiredLoginGoesOffline() {
+        PresenceService presence = presence("simple", Duration.ZERO);
+
+        presence.loggedIn("u1");
+        presence.flush();
+
+        assertThat(presence.getOnlineUsers()).isEmpty();
+        verify(messagingTemplate).convertAndSend(PresenceService.PRESENCE_TOPIC, new PresenceEvent("u1", false));
+    }
+
+    @Test
+    void lastSessionEndingPublishesOfflineInSimpleMode() {
+        PresenceService presence = presence("simple", Duration.ZERO);
+
+        presence.connected("u1", "s1");
+        presence.connected("u1", "s2");
+        presence.disconnected("s1");
+        verify(messagingTemplate, never()).convertAndSend(PresenceService.PRESENCE_TOPIC, new PresenceEvent("u1", false));
+
+        presence.disconnected("s2");
+        verify(messagingTemplate).convertAndSend(PresenceService.PRESENCE_TOPIC, new PresenceEvent("u1", false));
+    }
+
+    @Test
+    void relayWaitsUntilNoNodeReportsActivity() {
+        PresenceService presence = new PresenceService(messagingTemplate, repository, new SimpleMeterRegistry(),
+                "relay", Duration.ZERO, Duration.ZERO);
+
+        presence.connected("u1", "s1");
+        presence.disconnected("s1");
+        verify(messagingTemplate, never()).convertAndSend(PresenceService.PRESENCE_TOPIC, new PresenceEvent("u1", false));
+
+        // Still connected to another node
+        when(repository.findActiveSince(anyCollection(), any())).thenReturn(List.of("u1"));
+        presence.flush();
+        verify(messagingTemplate, never()).convertAndSend(PresenceService.PRESENCE_TOPIC, new PresenceEvent("u1", false));
+
+        presence.connected("u1", "s2");
+        presence.disconnected("s2");
+        when(repository.findActiveSince(anyCollection(), any())).thenReturn(List.of());
+        presence.flush();
+        verify(messagingTemplate).convertAndSend(PresenceService.PRESENCE_TOPIC, new PresenceEvent("u1", false));
+    }
+
+    private PresenceService presence(String brokerMode, Duration loginOnlineTtl) {
+        return new PresenceService(messagingTemplate, repository, new SimpleMeterRegistry(),
+                brokerMode, Duration.ofSeconds(90), loginOnlineTtl);
+    }
+}
@@ -0,0 +1,130 @@
+package com.dataquad.mymulyamessage.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutboundFlowControlInterceptorTest {
+
+    private OutboundFlowControlInterceptor interceptor;
+    private final List<Message<?>> written = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        interceptor = new OutboundFlowControlInterceptor(new SimpleMeterRegistry(), "drop", 2,
+                List.of("/topic/typing"));
+    }
+
+    @Test
+    void frameForIdleSessionGoesStraightThrough() {
+        ExecutorSubscribableChannel channel = channel();
+
+        assertThat(channel.send(frame(SimpMessageType.MESSAGE, "s1", "/topic/public", 1))).isTrue();
+
+        assertThat(written).hasSize(1);
+        assertThat(pending("s1")).isZero();
+    }
+
+    @Test
+    void disconnectAckAfterDisconnectEventDoesNotRecreateQueue() {
+        ExecutorSubscribableChannel channel = channel();
+        channel.send(frame(SimpMessageType.MESSAGE, "s1", "/topic/public", 1));
+
+        interceptor.onDisconnect(disconnectEvent("s1"));
+        channel.send(frame(SimpMessageType.DISCONNECT_ACK, "s1", null, 0));
+        channel.send(frame(SimpMessageType.MESSAGE, "s1", "/topic/public", 2));
+
+        assertThat(queues()).isEmpty();
+        // The ACK still reaches the session; the late broadcast frame doesn't
+        assertThat(written).extracting(message -> SimpMessageHeaderAccessor.getMessageType(message.getHeaders()))
+                .containsExactly(SimpMessageType.MESSAGE, SimpMessageType.DISCONNECT_ACK);
+    }
+
+    @Test
+    void keepsPublishOrderPerSessionOnAThreadPool() throws Exception {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.initialize();
+        CountDownLatch done = new CountDownLatch(1000);
+        // Like the real outbound channel: a single subscriber writing to the sessions
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+        channel.addInterceptor(interceptor);
+        channel.subscribe(message -> {
+            written.add(message);
+            done.countDown();
+        });
+
+        for (int i = 0; i < 1000; i++) {
+            channel.send(frame(SimpMessageType.MESSAGE, "s1", "/topic/public", i));
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+        assertThat(written.stream().map(Message::getPayload).toList())
+                .isEqualTo(IntStream.range(0, 1000).boxed().toList());
+    }
+
+    @Test
+    void dropsEphemeralFramesForBackloggedSessions() {
+        // Handler that never finishes writing, so frames pile up
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(command -> { });
+        channel.addInterceptor(interceptor);
+
+        for (int i = 0; i < 3; i++) {
+            channel.send(frame(SimpMessageType.MESSAGE, "s1", "/topic/public", i));
+        }
+        channel.send(frame(SimpMessageType.MESSAGE, "s1", "/topic/typing", 3));
+        channel.send(frame(SimpMessageType.MESSAGE, "s1", "/topic/public", 4));
+
+        assertThat(pending("s1")).isEqualTo(4);
+    }
+
+    private ExecutorSubscribableChannel channel() {
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+        channel.addInterceptor(interceptor);
+        channel.subscribe(written::add);
+        return channel;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> queues() {
+        return (Map<String, ?>) ReflectionTestUtils.getField(interceptor, "queuesBySession");
+    }
+
+    private int pending(String sessionId) {
+        return ((AtomicInteger) ReflectionTestUtils.getField(queues().get(sessionId), "size")).get();
+    }
+
+    private static Message<Integer> frame(SimpMessageType type, String sessionId, String destination, int payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private static SessionDisconnectEvent disconnectEvent(String sessionId) {
+        Message<byte[]> disconnect = MessageBuilder.createMessage(new byte[0],
+                SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT).getMessageHeaders());
+        return new SessionDisconnectEvent(new Object(), disconnect, sessionId, CloseStatus.NORMAL);
+    }
+}
@@ -0,0 +1,89 @@
+package com.dataquad.mymulyamessage.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenRejects() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryAcquire(0)).as("token %d", i).isTrue();
+        }
+        assertThat(bucket.tryAcquire(0)).isFalse();
+    }
+
+    @Test
+    void refillsAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+        for (int i = 0; i < 5; i++) {
+            bucket.tryAcquire(0);
+        }
+
+        // One token per 100 ms
+        assertThat(bucket.tryAcquire(SECOND / 10 - 1)).isFalse();
+        assertThat(bucket.tryAcquire(SECOND / 10)).isTrue();
+        assertThat(bucket.tryAcquire(SECOND / 10)).isFalse();
+    }
+
+    @Test
+    void idleTimeDoesNotExceedBurst() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        long later = 60 * SECOND;
+        int acquired = 0;
+        while (bucket.tryAcquire(later)) {
+            acquired++;
+        }
+
+        assertThat(acquired).isEqualTo(5);
+    }
+
+    @Test
+    void rejectedAttemptsDoNotConsumeTokens() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        bucket.tryAcquire(0);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(bucket.tryAcquire(SECOND / 20)).isFalse();
+        }
+        assertThat(bucket.tryAcquire(SECOND / 10)).isTrue();
+    }
+
+    @Test
+    void concurrentCallersGetExactlyTheBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 100, 0);
+        AtomicInteger acquired = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] workers = new Future<?>[8];
+            for (int t = 0; t < workers.length; t++) {
+                workers[t] = executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        if (bucket.tryAcquire(0)) {
+                            acquired.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            for (Future<?> worker : workers) {
+                worker.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(acquired).hasValue(100);
+    }
+}